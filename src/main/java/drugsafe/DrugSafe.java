@@ -1,16 +1,31 @@
 package drugsafe;
 
+import drugsafe.commands.CommandDispatcher;
 import drugsafe.commands.CommandRegistry;
 import drugsafe.data.Database;
+import drugsafe.data.logs.DoseWriter;
+import drugsafe.data.logs.LogCache;
+import drugsafe.data.logs.LogRepository;
+import drugsafe.data.substances.InteractionMatrixStore;
+import drugsafe.data.substances.PsychonautWiki;
+import drugsafe.data.substances.SnapshotStore;
+import drugsafe.data.substances.SubstanceCache;
+import drugsafe.data.substances.SubstanceIndexStore;
+import drugsafe.listeners.ComponentRouter;
 import drugsafe.listeners.PaginationListener;
+import drugsafe.util.Metrics;
 import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
 import net.dv8tion.jda.api.sharding.ShardManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Calendar;
 
 /**
@@ -23,6 +38,14 @@ public class DrugSafe {
 
     public final @NotNull Dotenv config;
     public final @NotNull Database database;
+    public final @Nullable DoseWriter doseWriter;
+    public final @NotNull LogCache logCache;
+    public final @NotNull LogRepository logs;
+    public final @NotNull PsychonautWiki psychonautWiki;
+    public final @NotNull SubstanceCache substanceCache;
+    public final @Nullable SnapshotStore substanceSnapshot;
+    public final @NotNull SubstanceIndexStore substanceIndex;
+    public final @NotNull InteractionMatrixStore interactionMatrix;
     public final @NotNull ShardManager shardManager;
 
     /**
@@ -35,7 +58,107 @@ public class DrugSafe {
         config = Dotenv.configure().ignoreIfMissing().load();
         String uri = config.get("MONGODB_URI", System.getenv("MONGODB_URI"));
         String databaseName = config.get("MONGODB_DB", System.getenv("MONGODB_DB"));
-        database = new Database(uri, databaseName);
+        Database.Settings databaseSettings = new Database.Settings(
+                Integer.parseInt(config.get("MONGODB_MAX_POOL_SIZE", "20")),
+                Integer.parseInt(config.get("MONGODB_MIN_POOL_SIZE", "0")),
+                Integer.parseInt(config.get("MONGODB_MAX_WAIT_QUEUE", "500")),
+                Duration.ofMillis(Long.parseLong(config.get("MONGODB_MAX_WAIT_MS", "2000"))),
+                Duration.ofMillis(Long.parseLong(config.get("MONGODB_CONNECT_TIMEOUT_MS", "5000"))),
+                Duration.ofMillis(Long.parseLong(config.get("MONGODB_SOCKET_TIMEOUT_MS", "10000"))),
+                Duration.ofMillis(Long.parseLong(config.get("MONGODB_SERVER_SELECTION_TIMEOUT_MS", "5000"))),
+                Duration.ofMillis(Long.parseLong(config.get("MONGODB_SLOW_COMMAND_MS", "100")))
+        );
+        database = new Database(uri, databaseName, databaseSettings);
+        Metrics.register("mongodb.pending", database::getPending);
+        Metrics.register("logs.migration.complete", () -> database.migration.isComplete() ? 1 : 0);
+
+        //Setup write-behind queue for logged doses (if enabled)
+        DoseWriter writer = null;
+        if (Boolean.parseBoolean(config.get("LOG_WRITE_BEHIND", "false"))) {
+            try {
+                writer = new DoseWriter(
+                        database.doses,
+                        Path.of(config.get("LOG_JOURNAL", "dose-journal.log")),
+                        Integer.parseInt(config.get("LOG_BATCH_SIZE", "100")),
+                        Duration.ofMillis(Long.parseLong(config.get("LOG_FLUSH_INTERVAL_MS", "500")))
+                );
+                Runtime.getRuntime().addShutdownHook(new Thread(writer::close));
+                Metrics.register("logs.writer.pending", writer::getPending);
+                Metrics.register("logs.writer.flushed", writer::getFlushed);
+                Metrics.register("logs.writer.batches", writer::getBatches);
+                Metrics.register("logs.writer.failures", writer::getFailures);
+                Metrics.register("logs.writer.syncs", writer::getSyncs);
+                Metrics.register("logs.writer.dead_lettered", writer::getDeadLettered);
+            } catch (IOException e) {
+                System.out.println("ERROR: Could not open dose journal, writing doses directly: " + e.getMessage());
+            }
+        }
+        doseWriter = writer;
+
+        //Setup cache of recently viewed logs
+        int logCacheSize = Integer.parseInt(config.get("LOG_CACHE_SIZE", "1000"));
+        long logCacheTtl = Long.parseLong(config.get("LOG_CACHE_TTL_MINUTES", "10"));
+        logCache = new LogCache(logCacheSize, Duration.ofMinutes(logCacheTtl));
+        Metrics.register("logs.cache.hits", logCache::getHits);
+        Metrics.register("logs.cache.misses", logCache::getMisses);
+        Metrics.register("logs.cache.hit_ratio", logCache::getHitRatio);
+        Metrics.register("logs.cache.evictions", logCache::getEvictions);
+        Metrics.register("logs.cache.size", logCache::size);
+        Metrics.register("logs.cache.bytes", logCache::getMemoryEstimate);
+        logs = new LogRepository(database, doseWriter, logCache);
+        long statsRebuildHours = Long.parseLong(config.get("LOG_STATS_REBUILD_HOURS", "24"));
+        if (statsRebuildHours > 0) logs.scheduleStatsRebuild(Duration.ofHours(statsRebuildHours));
+
+        //Setup PsychonautWiki client
+        psychonautWiki = new PsychonautWiki(
+                config.get("PSYCHONAUTWIKI_URL", PsychonautWiki.API_URL),
+                Duration.ofMillis(Long.parseLong(config.get("PSYCHONAUTWIKI_CONNECT_TIMEOUT_MS", "3000"))),
+                Duration.ofMillis(Long.parseLong(config.get("PSYCHONAUTWIKI_READ_TIMEOUT_MS", "7000"))),
+                Integer.parseInt(config.get("PSYCHONAUTWIKI_MAX_CONCURRENT", "32")),
+                Integer.parseInt(config.get("PSYCHONAUTWIKI_BREAKER_FAILURES", "5")),
+                Duration.ofSeconds(Long.parseLong(config.get("PSYCHONAUTWIKI_BREAKER_OPEN_SECONDS", "30")))
+        );
+
+        //Setup substance cache
+        int cacheSize = Integer.parseInt(config.get("SUBSTANCE_CACHE_SIZE", "500"));
+        long cacheTtl = Long.parseLong(config.get("SUBSTANCE_CACHE_TTL_MINUTES", "1440"));
+        long negativeCacheTtl = Long.parseLong(config.get("SUBSTANCE_CACHE_NEGATIVE_TTL_MINUTES", "60"));
+        substanceCache = new SubstanceCache(cacheSize, Duration.ofMinutes(cacheTtl), Duration.ofMinutes(negativeCacheTtl));
+        Metrics.register("substances.cache.hits", substanceCache::getHits);
+        Metrics.register("substances.cache.misses", substanceCache::getMisses);
+        Metrics.register("substances.cache.evictions", substanceCache::getEvictions);
+        Metrics.register("substances.cache.size", substanceCache::size);
+
+        //Setup offline substance snapshot (if enabled)
+        String snapshotPath = config.get("SUBSTANCE_SNAPSHOT", System.getenv("SUBSTANCE_SNAPSHOT"));
+        if (snapshotPath != null && !snapshotPath.isBlank()) {
+            substanceSnapshot = new SnapshotStore(Path.of(snapshotPath), psychonautWiki);
+            long refreshHours = Long.parseLong(config.get("SUBSTANCE_SNAPSHOT_REFRESH_HOURS", "24"));
+            if (refreshHours > 0) substanceSnapshot.scheduleRefresh(Duration.ofHours(refreshHours));
+        } else {
+            substanceSnapshot = null;
+        }
+
+        //Setup substance name index for autocomplete
+        substanceIndex = new SubstanceIndexStore(psychonautWiki);
+        long indexRefreshHours = Long.parseLong(config.get("SUBSTANCE_INDEX_REFRESH_HOURS", "6"));
+        if (indexRefreshHours > 0) substanceIndex.scheduleRefresh(Duration.ofHours(indexRefreshHours));
+        else substanceIndex.load();
+        Metrics.register("substances.index.size", () -> substanceIndex.get().size());
+
+        //Setup substance interaction matrix for combo checks
+        interactionMatrix = new InteractionMatrixStore(psychonautWiki);
+        long matrixRefreshHours = Long.parseLong(config.get("INTERACTION_MATRIX_REFRESH_HOURS", "24"));
+        if (matrixRefreshHours > 0) interactionMatrix.scheduleRefresh(Duration.ofHours(matrixRefreshHours));
+        else interactionMatrix.load();
+        Metrics.register("substances.interactions.size", () -> interactionMatrix.get().size());
+
+        //Setup paginated menus
+        PaginationListener.stateless = Boolean.parseBoolean(config.get("PAGINATION_STATELESS", "true"));
+        PaginationListener.menus.setMaxMenus(Integer.parseInt(config.get("PAGINATION_MAX_MENUS", String.valueOf(PaginationListener.MAX_MENUS))));
+        Metrics.register("pagination.menus.open", PaginationListener.menus::size);
+        Metrics.register("pagination.menus.expired", PaginationListener.menus::getExpired);
+        Metrics.register("pagination.menus.evicted", PaginationListener.menus::getEvicted);
 
         //Build JDA shards
         String botToken = config.get("TOKEN", System.getenv("TOKEN"));
@@ -44,10 +167,31 @@ public class DrugSafe {
         builder.setActivity(Activity.watching("drugsafe.info"));
 
         // Add commands and listeners
-        CommandRegistry commandRegistry = new CommandRegistry(this);
+        CommandDispatcher.Settings dispatcherSettings = new CommandDispatcher.Settings(
+                Integer.parseInt(config.get("COMMAND_THREADS", "32")),
+                Integer.parseInt(config.get("COMMAND_MAX_QUEUE", "1000")),
+                Integer.parseInt(config.get("COMMAND_MAX_CONCURRENT", "16")),
+                Duration.ofMillis(Long.parseLong(config.get("COMMAND_DEFER_MS", "2500"))),
+                Duration.ofMillis(Long.parseLong(config.get("COMMAND_TIMEOUT_MS", "20000")))
+        );
+        CommandRegistry commandRegistry = new CommandRegistry(this, dispatcherSettings);
+        CommandDispatcher dispatcher = commandRegistry.dispatcher;
+        Metrics.register("commands.queued", dispatcher::getQueued);
+        Metrics.register("commands.active", dispatcher::getActive);
+        Metrics.register("commands.rejected", dispatcher::getRejected);
+        Metrics.register("commands.deferred", dispatcher::getDeferred);
+        Metrics.register("commands.timeouts", dispatcher::getTimeouts);
+        Metrics.register("commands.failures", dispatcher::getFailures);
+        ComponentRouter componentRouter = new ComponentRouter();
+        PaginationListener.register(componentRouter);
+        Metrics.register("components.routed", componentRouter::getRouted);
+        Metrics.register("components.malformed", componentRouter::getMalformed);
+        Metrics.register("components.unrouted", componentRouter::getUnrouted);
+        long metricsLogMinutes = Long.parseLong(config.get("METRICS_LOG_MINUTES", "5"));
+        if (metricsLogMinutes > 0) Metrics.scheduleLog(Duration.ofMinutes(metricsLogMinutes));
         builder.addEventListeners(
                 commandRegistry,
-                new PaginationListener()
+                componentRouter
         );
 
         // Register the commands as global commands
@@ -2,12 +2,15 @@ package drugsafe.commands;
 
 import drugsafe.DrugSafe;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Represents a general slash command with properties.
@@ -24,6 +27,8 @@ public abstract class Command {
     public List<SubcommandData> subCommands;
     public Permission permission; //Permission user needs to execute this command
     public Permission botPermission; //Permission bot needs to execute this command
+    public int maxConcurrent; //Most executions of this command in flight at once (0 for the default)
+    public Duration timeout; //Time this command has to reply before it fails (null for the default)
     public List<String> autocomplete;
 
     public Command(DrugSafe bot) {
@@ -32,5 +37,26 @@ public abstract class Command {
         this.subCommands = new ArrayList<>();
     }
 
-    public abstract void execute(SlashCommandInteractionEvent event);
+    /**
+     * Runs the command.
+     *
+     * @param event the slash command event, for reading options.
+     * @param reply replies to the command (use this instead of replying through the event).
+     */
+    public abstract void execute(SlashCommandInteractionEvent event, CommandReply reply);
+
+    /**
+     * Replies to an autocomplete interaction for one of this command's options.
+     * By default, suggests words from the static autocomplete list that start with the typed value.
+     *
+     * @param event the autocomplete event to reply to.
+     */
+    public void onAutoComplete(CommandAutoCompleteInteractionEvent event) {
+        if (autocomplete == null) return;
+        List<net.dv8tion.jda.api.interactions.commands.Command.Choice> options = autocomplete.stream()
+                .filter(word -> word.startsWith(event.getFocusedOption().getValue()))
+                .map(word -> new net.dv8tion.jda.api.interactions.commands.Command.Choice(word, word))
+                .collect(Collectors.toList());
+        event.replyChoices(options).queue();
+    }
 }
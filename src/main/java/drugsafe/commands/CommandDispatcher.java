@@ -0,0 +1,170 @@
+package drugsafe.commands;
+
+import drugsafe.util.LatencyHistogram;
+import drugsafe.util.Metrics;
+import drugsafe.util.embeds.EmbedUtils;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs slash commands on a bounded worker pool instead of JDA's event thread,
+ * so a command blocking on the database or an API doesn't hold up other events on its shard.
+ * <p>
+ * Each command may only have a limited number of executions in flight, counted until its reply is delivered.
+ * Commands reply through a {@link CommandReply}: one that hasn't replied shortly before Discord's 3 second limit
+ * is deferred (its reply then edits the loading message), and if it still hasn't replied by its deadline
+ * it replies with an error instead. Anything the command sends after that is dropped.
+ *
+ * @author TechnoVision
+ */
+public class CommandDispatcher {
+
+    private final Settings settings;
+    private final @Nullable ThreadPoolExecutor executor;
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "command-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Executions allowed in flight, by command name */
+    private final Map<String, Semaphore> limits = new ConcurrentHashMap<>();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param settings the worker pool, limits, and deadlines to use.
+     */
+    public CommandDispatcher(@NotNull Settings settings) {
+        this.settings = settings;
+        if (settings.threads() > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(settings.threads(), settings.threads(), 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(settings.maxQueue()), runnable -> {
+                Thread thread = new Thread(runnable, "command-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+        queueWait.register("commands.queue_wait");
+    }
+
+    /**
+     * Runs a command, or replies that the bot is busy if the command is at its limit or the queue is full.
+     *
+     * @param cmd the command to run.
+     * @param event the slash command event to pass to the command.
+     */
+    public void dispatch(@NotNull Command cmd, @NotNull SlashCommandInteractionEvent event) {
+        Semaphore limit = limits.computeIfAbsent(cmd.name, name -> {
+            int permits = (cmd.maxConcurrent > 0) ? cmd.maxConcurrent : settings.maxConcurrent();
+            Semaphore semaphore = new Semaphore(permits);
+            Metrics.register("commands." + name + ".in_flight", () -> permits - semaphore.availablePermits());
+            return semaphore;
+        });
+        if (!limit.tryAcquire()) {
+            reject(event);
+            return;
+        }
+
+        // The permit is held until the command's reply is delivered, not just until execute() returns,
+        // since most commands reply from a callback once their database or API call completes
+        CommandReply reply = new CommandReply(event);
+        long queued = System.nanoTime();
+        Runnable task = () -> {
+            queueWait.record(System.nanoTime() - queued);
+            try {
+                cmd.execute(event, reply);
+            } catch (Exception e) {
+                failures.increment();
+                System.out.println("ERROR: Command /" + cmd.name + " failed: " + e.getMessage());
+                reply.error("An error occurred while running that command!");
+            }
+        };
+
+        if (executor == null) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                limit.release();
+                reject(event);
+                return;
+            }
+        }
+        reply.done().whenComplete((result, error) -> limit.release());
+
+        Duration timeout = (cmd.timeout != null) ? cmd.timeout : settings.timeout();
+        deadlines.schedule(() -> {
+            if (reply.defer(false)) deferred.increment();
+        }, settings.deferAfter().toMillis(), TimeUnit.MILLISECONDS);
+        deadlines.schedule(() -> {
+            if (reply.isSent()) return;
+            timeouts.increment();
+            reply.error("That took too long! Please try again in a moment.");
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void reject(SlashCommandInteractionEvent event) {
+        rejected.increment();
+        event.replyEmbeds(EmbedUtils.createError("I'm busy right now! Please try again in a moment.")).setEphemeral(true).queue();
+    }
+
+    /**
+     * @return the number of commands waiting for a worker thread.
+     */
+    public int getQueued() {
+        return (executor != null) ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * @return the number of commands running on worker threads.
+     */
+    public int getActive() {
+        return (executor != null) ? executor.getActiveCount() : 0;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Command dispatch settings.
+     *
+     * @param threads the number of worker threads, or 0 to run commands on JDA's event thread.
+     * @param maxQueue the most commands that can wait for a worker thread before new ones are turned away.
+     * @param maxConcurrent the default number of times each command can run at once.
+     * @param deferAfter how long a command can go without replying before it is deferred.
+     * @param timeout the default time a command has to reply before it fails.
+     */
+    public record Settings(int threads, int maxQueue, int maxConcurrent, Duration deferAfter, Duration timeout) {
+
+        public static final Settings DEFAULT = new Settings(32, 1000, 16, Duration.ofMillis(2500), Duration.ofSeconds(20));
+    }
+}
@@ -1,6 +1,7 @@
 package drugsafe.commands;
 
 import drugsafe.DrugSafe;
+import drugsafe.commands.information.ComboCommand;
 import drugsafe.commands.information.InfoCommand;
 import drugsafe.commands.logging.LogCommand;
 import drugsafe.commands.util.HelpCommand;
@@ -20,7 +21,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Registers, listens, and executes commands.
@@ -35,15 +35,30 @@ public class CommandRegistry extends ListenerAdapter {
     /** Map of command names to command objects */
     public static final Map<String, Command> commandsMap = new HashMap<>();
 
+    /** Runs commands off JDA's event thread */
+    public final CommandDispatcher dispatcher;
+
     /**
      * Adds commands to a global list and registers them as event listener.
      *
      * @param bot An instance of the bot.
      */
     public CommandRegistry(DrugSafe bot) {
+        this(bot, CommandDispatcher.Settings.DEFAULT);
+    }
+
+    /**
+     * Adds commands to a global list and registers them as event listener.
+     *
+     * @param bot An instance of the bot.
+     * @param settings how commands are dispatched to worker threads.
+     */
+    public CommandRegistry(DrugSafe bot, CommandDispatcher.Settings settings) {
+        this.dispatcher = new CommandDispatcher(settings);
         mapCommand(
                 //Information commands
                 new InfoCommand(bot),
+                new ComboCommand(bot),
 
                 // Logging commands
                 new LogCommand(bot),
@@ -106,8 +121,8 @@ public class CommandRegistry extends ListenerAdapter {
                     return;
                 }
             }
-            // Run command
-            cmd.execute(event);
+            // Run command on a worker thread
+            dispatcher.dispatch(cmd, event);
         }
     }
 
@@ -118,11 +133,7 @@ public class CommandRegistry extends ListenerAdapter {
     public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event) {
         Command cmd = commandsMap.get(event.getName());
         if (cmd != null) {
-            List<net.dv8tion.jda.api.interactions.commands.Command.Choice> options = cmd.autocomplete.stream()
-                    .filter(word -> word.startsWith(event.getFocusedOption().getValue()))
-                    .map(word -> new net.dv8tion.jda.api.interactions.commands.Command.Choice(word, word))
-                    .collect(Collectors.toList());
-            event.replyChoices(options).queue();
+            cmd.onAutoComplete(event);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package drugsafe.commands;
+
+import drugsafe.util.embeds.EmbedUtils;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.exceptions.ErrorHandler;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The single reply to a slash command. Commands reply through this instead of the event,
+ * so the reply goes to the right place whether or not the interaction was deferred in the meantime,
+ * and so the {@link CommandDispatcher} knows when the command is done.
+ * <p>
+ * Only the first reply is sent, later ones complete exceptionally.
+ *
+ * @author TechnoVision
+ */
+public class CommandReply {
+
+    private final SlashCommandInteractionEvent event;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private boolean deferred;
+    private boolean sent;
+
+    /**
+     * @param event the slash command being replied to.
+     */
+    public CommandReply(@NotNull SlashCommandInteractionEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * Acknowledges the interaction without replying yet, showing a loading message.
+     * Does nothing if the interaction was already acknowledged.
+     *
+     * @param ephemeral true if the reply should only be visible to the user.
+     * @return true if the interaction was deferred by this call.
+     */
+    public synchronized boolean defer(boolean ephemeral) {
+        if (sent || deferred || event.isAcknowledged()) return false;
+        deferred = true;
+        event.deferReply(ephemeral).queue(null, new ErrorHandler().ignore(ErrorResponse.UNKNOWN_INTERACTION));
+        return true;
+    }
+
+    /**
+     * Sends the reply, or edits the loading message if the interaction was deferred.
+     * Whether a deferred reply is ephemeral was decided when it was deferred.
+     *
+     * @param message the reply.
+     * @param ephemeral true if the reply should only be visible to the user.
+     * @return a future completed with a hook to the reply once it is sent.
+     */
+    public CompletableFuture<InteractionHook> send(@NotNull MessageCreateData message, boolean ephemeral) {
+        CompletableFuture<InteractionHook> result;
+        synchronized (this) {
+            if (sent) return CompletableFuture.failedFuture(new IllegalStateException("This command already replied"));
+            sent = true;
+            try {
+                if (deferred) {
+                    InteractionHook hook = event.getHook();
+                    result = hook.editOriginal(MessageEditData.fromCreateData(message)).submit().thenApply(m -> hook);
+                } else {
+                    result = event.reply(message).setEphemeral(ephemeral).submit();
+                }
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+        }
+        result.whenComplete((hook, error) -> done.complete(null));
+        return result;
+    }
+
+    public CompletableFuture<InteractionHook> send(@NotNull MessageEmbed embed, boolean ephemeral) {
+        return send(MessageCreateData.fromEmbeds(embed), ephemeral);
+    }
+
+    public CompletableFuture<InteractionHook> send(@NotNull MessageEmbed embed) {
+        return send(embed, false);
+    }
+
+    /**
+     * Replies with an ephemeral error embed.
+     *
+     * @param text the error message.
+     */
+    public CompletableFuture<InteractionHook> error(@NotNull String text) {
+        return send(EmbedUtils.createError(text), true);
+    }
+
+    /**
+     * @return true if a reply was sent (or is being sent).
+     */
+    public synchronized boolean isSent() {
+        return sent;
+    }
+
+    /**
+     * @return a future completed once the reply has been delivered or has failed.
+     */
+    public CompletableFuture<Void> done() {
+        return done;
+    }
+}
@@ -0,0 +1,102 @@
+package drugsafe.commands.information;
+
+import drugsafe.DrugSafe;
+import drugsafe.commands.Category;
+import drugsafe.commands.Command;
+import drugsafe.commands.CommandReply;
+import drugsafe.data.substances.InteractionMatrix;
+import drugsafe.util.embeds.EmbedColor;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Command that checks a combination of substances for known interactions.
+ *
+ * @author TechnoVision
+ */
+public class ComboCommand extends Command {
+
+    private static final String[] OPTIONS = {"a", "b", "c", "d", "e"};
+
+    public ComboCommand(DrugSafe bot) {
+        super(bot);
+        this.name = "combo";
+        this.description = "Check a combination of substances for dangerous interactions";
+        this.category = Category.INFORMATION;
+        for (int i = 0; i < OPTIONS.length; i++) {
+            boolean required = i < 2;
+            String text = required ? "A substance to check" : "Another substance to check (optional)";
+            this.args.add(new OptionData(OptionType.STRING, OPTIONS[i], text, required).setAutoComplete(true));
+        }
+    }
+
+    @Override
+    public void execute(SlashCommandInteractionEvent event, CommandReply reply) {
+        InteractionMatrix matrix = bot.interactionMatrix.get();
+        if (matrix.size() == 0) {
+            String error = "Interaction data is still loading! Please try again in a moment.";
+            reply.error(error);
+            return;
+        }
+
+        // Resolve each substance to its matrix id (ignoring duplicates)
+        LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+        for (String option : OPTIONS) {
+            OptionMapping mapping = event.getOption(option);
+            if (mapping == null) continue;
+            int id = matrix.idOf(mapping.getAsString());
+            if (id == -1) {
+                String error = "The substance **" + mapping.getAsString() + "** does not exist! Try a different name.";
+                reply.error(error);
+                return;
+            }
+            ids.add(id);
+        }
+        if (ids.size() < 2) {
+            reply.error("Please enter at least two different substances!");
+            return;
+        }
+
+        // Check every pair and find the worst interaction
+        List<InteractionMatrix.Pair> pairs = matrix.check(ids.stream().mapToInt(Integer::intValue).toArray());
+        InteractionMatrix.Level worst = InteractionMatrix.Level.NONE;
+        StringBuilder description = new StringBuilder();
+        for (InteractionMatrix.Pair pair : pairs) {
+            if (pair.level().compareTo(worst) > 0) worst = pair.level();
+            description.append(pair.level().emoji).append(" **")
+                    .append(matrix.nameOf(pair.a())).append(" + ").append(matrix.nameOf(pair.b()))
+                    .append(":** ").append(pair.level().label).append("\n");
+        }
+
+        // Reply with embed colored by the worst interaction
+        int color = switch (worst) {
+            case DANGEROUS -> EmbedColor.ERROR.color;
+            case UNSAFE -> EmbedColor.WARNING.color;
+            case UNCERTAIN -> EmbedColor.DEFAULT.color;
+            case NONE -> EmbedColor.SUCCESS.color;
+        };
+        EmbedBuilder embed = new EmbedBuilder()
+                .setColor(color)
+                .setTitle(":test_tube: Combination Check")
+                .setDescription(description)
+                .addField(":globe_with_meridians: __Links__", "[Drug Combinations](https://wiki.tripsit.me/images/3/3a/Combo_2.png)", false)
+                .setFooter("No known interaction does not mean a combination is safe", "https://cdn-icons-png.flaticon.com/512/4320/4320344.png");
+        reply.send(embed.build());
+    }
+
+    /**
+     * Suggests substance names from the in-memory name index.
+     */
+    @Override
+    public void onAutoComplete(CommandAutoCompleteInteractionEvent event) {
+        event.replyChoices(InfoCommand.getSubstanceChoices(bot, event.getFocusedOption().getValue())).queue();
+    }
+}
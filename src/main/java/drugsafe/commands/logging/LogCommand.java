@@ -1,28 +1,38 @@
 package drugsafe.commands.logging;
 
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Updates;
 import drugsafe.DrugSafe;
 import drugsafe.commands.Category;
 import drugsafe.commands.Command;
-import drugsafe.data.Database;
+import drugsafe.commands.CommandReply;
 import drugsafe.data.logs.Entry;
-import drugsafe.data.logs.Log;
+import drugsafe.data.logs.LogExporter;
+import drugsafe.data.logs.LogStats;
+import drugsafe.data.substances.DoseTier;
+import drugsafe.data.substances.Substance;
+import drugsafe.data.substances.SubstanceCache;
+import drugsafe.listeners.PageRenderer;
 import drugsafe.listeners.PaginationListener;
+import drugsafe.util.embeds.EmbedColor;
 import drugsafe.util.embeds.EmbedUtils;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
-import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
-import org.bson.conversions.Bson;
+import net.dv8tion.jda.api.utils.FileUpload;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.List;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Command that logs a drug dose to the user's log.
@@ -31,11 +41,15 @@ import java.util.List;
  */
 public class LogCommand extends Command {
 
+    /** Largest export file that can be sent as an attachment */
+    public static final long MAX_EXPORT_SIZE = 25L * 1024 * 1024;
+
     public LogCommand(DrugSafe bot) {
         super(bot);
         this.name = "log";
         this.description = "Log commands";
         this.category = Category.LOGGING;
+        this.timeout = Duration.ofMinutes(2); //Exports of large logs take a while to write
         this.autocomplete = Arrays.asList("Alcohol", "Amphetamine", "Benzodiazepines", "Cannabis", "Cocaine", "DMT", "DXM", "GBL", "GHB", "Ketamine", "Heroin", "Kratom", "LSD", "MDMA", "Methamphetamine", "Mushrooms", "Modafinil", "Nicotine", "Oxycodone", "2C-B");
 
         // Add subcommand
@@ -79,45 +93,110 @@ public class LogCommand extends Command {
         this.subCommands.add(new SubcommandData("reset", "Reset your entire log or a specified year")
                 .addOptions(new OptionData(OptionType.INTEGER, "year", "Specify which year to reset log data", false).setMinValue(2023))
         );
+
+        // Export subcommand
+        this.subCommands.add(new SubcommandData("export", "Download your dose log as a file")
+                .addOptions(
+                        new OptionData(OptionType.STRING, "format", "The file format", false)
+                                .addChoice("CSV", "csv")
+                                .addChoice("JSON", "json"),
+                        new OptionData(OptionType.INTEGER, "year", "Specify a year to export logged doses", false).setMinValue(2023)
+                )
+        );
+
+        // Stats subcommand
+        this.subCommands.add(new SubcommandData("stats", "View totals and averages from your dose log")
+                .addOptions(new OptionData(OptionType.USER, "user", "See another user's stats", false))
+        );
+
+        // Render log pages when their buttons are pressed
+        PaginationListener.registerRenderer("log", this::renderPage);
+        PaginationListener.registerReset("log", this::confirmReset);
     }
 
     @Override
-    public void execute(SlashCommandInteractionEvent event) {
+    public void execute(SlashCommandInteractionEvent event, CommandReply reply) {
         switch(event.getSubcommandName()) {
-            case "add" -> executeAdd(event);
-            case "view" -> executeView(event);
-            case "remove" -> executeRemove(event);
-            case "reset" -> executeReset(event);
+            case "add" -> executeAdd(event, reply);
+            case "view" -> executeView(event, reply);
+            case "remove" -> executeRemove(event, reply);
+            case "reset" -> executeReset(event, reply);
+            case "stats" -> executeStats(event, reply);
+            case "export" -> executeExport(event, reply);
         }
     }
 
     /**
      * Adds a new dose to the user's log.
      */
-    private void executeAdd(SlashCommandInteractionEvent event) {
+    private void executeAdd(SlashCommandInteractionEvent event, CommandReply reply) {
         // Get command data and create new entry
         long userID = event.getUser().getIdLong();
         String drug = event.getOption("drug").getAsString();
         double dose = event.getOption("dose").getAsDouble();
         String units = event.getOption("units").getAsString();
         String route = event.getOption("route").getAsString();
-        Entry entry = new Entry(drug, dose, units, route);
-
-        // Update log in database
-        Bson filter = Filters.eq("user", userID);
-        Bson update = Updates.addToSet("doses." + DrugSafe.getCurrentYear(), entry);
-        bot.database.logs.updateOne(filter, update, Database.UPSERT);
+        Entry entry = new Entry(userID, drug, dose, units, route);
 
-        // Reply with embed (ephemeral if hidden)
         OptionMapping hide = event.getOption("hide");
         boolean isEphemeral = hide != null && hide.getAsBoolean();
-        event.replyEmbeds(entry.getEmbed(userID).build()).setEphemeral(isEphemeral).queue();
+
+        // Store dose, then reply once it is saved
+        bot.logs.add(entry).whenComplete((result, error) -> {
+            if (error != null) {
+                replyError(reply, error);
+                return;
+            }
+
+            // Classify dose against cached dosage data (if any)
+            EmbedBuilder embed = entry.getEmbed(userID);
+            DoseTier tier = classifyDose(drug, dose, units, route);
+            if (tier != null) {
+                embed.addField("Dose Tier", tier.emoji + " " + tier.label, true);
+                if (tier.isWarning()) {
+                    embed.setColor(EmbedColor.WARNING.color);
+                    embed.addField(":warning: Warning", "This is a **heavy** dose for this route. Please consider a lower dose and never use alone.", false);
+                }
+            }
+
+            // Reply with embed (ephemeral if hidden)
+            reply.send(embed.build(), isEphemeral);
+        });
+    }
+
+    /**
+     * Classifies a dose using only substance data already in memory (cache or offline snapshot).
+     * Never calls the API, and skips quietly if no data is available.
+     *
+     * @return the dose tier, or null if it can't be determined.
+     */
+    private DoseTier classifyDose(String drug, double dose, String units, String route) {
+        Substance substance = null;
+        SubstanceCache.Cached cached = bot.substanceCache.getStale(drug);
+        if (cached != null && cached.exists()) {
+            substance = cached.data();
+        } else if (bot.substanceSnapshot != null && bot.substanceSnapshot.get() != null) {
+            try {
+                substance = bot.substanceSnapshot.get().find(drug);
+            } catch (IOException ignored) { }
+        }
+        return (substance != null) ? DoseTier.classify(substance, route, dose, units) : null;
+    }
+
+    /**
+     * Replies with an error when a database operation fails.
+     */
+    private void replyError(CommandReply reply, Throwable error) {
+        String text = (error instanceof RejectedExecutionException || error.getCause() instanceof RejectedExecutionException)
+                ? "The dose log is busy right now! Please try again in a moment."
+                : "An error occurred while accessing the dose log!";
+        reply.error(text);
     }
 
     /**
      * Shows the user's log as an embed in chat.
      */
-    private void executeView(SlashCommandInteractionEvent event) {
+    private void executeView(SlashCommandInteractionEvent event, CommandReply reply) {
         // Get user
         OptionMapping userOption = event.getOption("user");
         User user = (userOption != null) ? userOption.getAsUser() : event.getUser();
@@ -126,30 +205,47 @@ public class LogCommand extends Command {
         OptionMapping yearOption = event.getOption("year");
         String year = (yearOption != null) ? yearOption.getAsString() : DrugSafe.getCurrentYear();
 
-        // Get log from database (with error checking)
-        Log log = bot.database.logs.find(Filters.eq("user", user.getIdLong())).first();
-        if (log == null || log.getDoses().isEmpty()) {
-            // Error: User does not yet have any data logged
-            String error = (user.getIdLong() == event.getUser().getIdLong()) ? "You have not yet logged any doses!" : "The user <@"+user.getIdLong()+"> has not yet logged any doses!";
-            event.replyEmbeds(EmbedUtils.createError(error)).setEphemeral(true).queue();
-            return;
-        } else if (!log.getDoses().containsKey(year) || log.getDoses().get(year).isEmpty()) {
-            // Error: year does not yet have any data logged
-            event.replyEmbeds(EmbedUtils.createError("The year **"+year+"** does not yet have any logged doses!")).setEphemeral(true).queue();
-            return;
-        }
+        // Count doses for the year in database (with error checking)
+        long userID = user.getIdLong();
+        bot.logs.view(user, year).whenComplete((view, error) -> {
+            if (error != null) {
+                replyError(reply, error);
+            } else if (view.page() == null && !view.hasDoses()) {
+                // Error: User does not yet have any data logged
+                String text = (userID == event.getUser().getIdLong()) ? "You have not yet logged any doses!" : "The user <@"+userID+"> has not yet logged any doses!";
+                reply.error(text);
+            } else if (view.page() == null) {
+                // Error: year does not yet have any data logged
+                reply.error("The year **"+year+"** does not yet have any logged doses!");
+            } else {
+                // Send paginated log (later pages are read when they are shown)
+                if (view.pages().getPageCount() == 1) { reply.send(view.page()); }
+                else if (PaginationListener.stateless) { PaginationListener.sendStatelessMenu("log", user.getId(), userID+":"+year, reply, view.page(), view.pages().getPageCount()); }
+                else { PaginationListener.sendPaginatedMenu(user.getId(), reply, view.page(), view.pages()); }
+            }
+        });
+    }
 
-        // Send paginated log
-        List<MessageEmbed> embeds = log.getEmbed(user, year);
-        ReplyCallbackAction action = event.replyEmbeds(embeds.get(0));
-        if (embeds.size() == 1) { action.queue(); }
-        else { PaginationListener.sendPaginatedMenu(user.getId(), action, embeds); }
+    /**
+     * Renders a page of a stateless log menu. The log's owner is usually the user pressing the button,
+     * otherwise they are taken from the cache, so pages never wait on a user lookup.
+     *
+     * @param params the ID of the user whose log is displayed and the year, separated by a colon.
+     */
+    private CompletableFuture<PageRenderer.Page> renderPage(User presser, String params, int page) {
+        int split = params.indexOf(':');
+        long userID = Long.parseLong(params.substring(0, split));
+        String year = params.substring(split + 1);
+        User user = (presser.getIdLong() == userID) ? presser : presser.getJDA().getUserById(userID);
+        if (user == null) return CompletableFuture.completedFuture(null);
+        return bot.logs.view(user, year, page)
+                .thenApply(view -> (view.page() != null) ? new PageRenderer.Page(view.page(), view.index(), view.pages().getPageCount()) : null);
     }
 
     /**
      * Removes a logged dose from the user's log by ID.
      */
-    private void executeRemove(SlashCommandInteractionEvent event) {
+    private void executeRemove(SlashCommandInteractionEvent event, CommandReply reply) {
         // Get command data
         int index = event.getOption("id").getAsInt() - 1;
         long userID = event.getUser().getIdLong();
@@ -158,56 +254,151 @@ public class LogCommand extends Command {
         OptionMapping yearOption = event.getOption("year");
         String year = (yearOption != null) ? yearOption.getAsString() : DrugSafe.getCurrentYear();
 
-        // Get log from database
-        Bson filter = Filters.eq("user", userID);
-        Log log = bot.database.logs.find(filter).first();
-
-        // Error checking
-        if (log == null || log.getDoses().isEmpty()) {
-            event.replyEmbeds(EmbedUtils.createError("You have not yet logged any doses!")).setEphemeral(true).queue();
-            return;
-        } else if (!log.getDoses().containsKey(year) || log.getDoses().get(year).isEmpty()) {
-            event.replyEmbeds(EmbedUtils.createError("The year **"+year+"** does not yet have any logged doses!")).setEphemeral(true).queue();
-            return;
-        } else if (log.getDoses().get(year).size() <= index) {
-            event.replyEmbeds(EmbedUtils.createError("That ID does not exist! Use `/log view` to see valid dose IDs.")).setEphemeral(true).queue();
-            return;
-        }
+        // Remove the dose at this position in the year
+        bot.logs.remove(userID, year, index).whenComplete((removedEntry, error) -> {
+            if (error instanceof ConcurrentModificationException || (error != null && error.getCause() instanceof ConcurrentModificationException)) {
+                reply.error("Your log changed while removing that dose! Use `/log view` to check the dose IDs and try again.");
+            } else if (error != null) {
+                replyError(reply, error);
+            } else if (removedEntry == null) {
+                // Error checking
+                bot.logs.status(userID, year).whenComplete((status, statusError) -> {
+                    String text;
+                    if (statusError != null) text = "That ID does not exist! Use `/log view` to see valid dose IDs.";
+                    else text = switch (status) {
+                        case NO_DOSES -> "You have not yet logged any doses!";
+                        case NO_DOSES_IN_YEAR -> "The year **"+year+"** does not yet have any logged doses!";
+                        case HAS_DOSES -> "That ID does not exist! Use `/log view` to see valid dose IDs.";
+                    };
+                    reply.error(text);
+                });
+            } else {
+                // Reply with embed of removed dose
+                EmbedBuilder embed = removedEntry.getEmbed(userID);
+                embed.setTitle("Dose #"+(index+1)+" Removed");
+                embed.setThumbnail("https://cdn-icons-png.flaticon.com/512/2427/2427634.png");
+                reply.send(embed.build());
+            }
+        });
+    }
 
-        // Update log in database
-        Entry removedEntry = log.getDoses().get(year).remove(index);
-        Bson update = Updates.pull("doses." + year, removedEntry);
-        bot.database.logs.updateOne(filter, update);
+    /**
+     * Asks the user to confirm resetting their entire log or a specific year.
+     */
+    private void executeReset(SlashCommandInteractionEvent event, CommandReply reply) {
+        // Get command data
+        OptionMapping yearOption = event.getOption("year");
+        String year = (yearOption != null) ? yearOption.getAsString() : "";
 
-        // Reply with embed of removed dose
-        EmbedBuilder embed = removedEntry.getEmbed(userID);
-        embed.setTitle("Dose #"+(index+1)+" Removed");
-        embed.setThumbnail("https://cdn-icons-png.flaticon.com/512/2427/2427634.png");
-        event.replyEmbeds(embed.build()).queue();
+        String text = year.isEmpty()
+                ? "Are you sure you want to reset your entire dose log? This can't be undone!"
+                : "Are you sure you want to reset your dose log for the year **"+year+"**? This can't be undone!";
+        PaginationListener.sendResetMenu(event.getUser().getId(), "log", year, reply, EmbedUtils.createDefault(text));
     }
 
     /**
-     * Resets a user's entire log or a specific year.
+     * Resets a user's entire log or a specific year once they confirm it.
+     *
+     * @param params the year to reset, or an empty string for the entire log.
      */
-    private void executeReset(SlashCommandInteractionEvent event) {
+    private void confirmReset(GenericComponentInteractionCreateEvent event, String params) {
+        long userID = event.getUser().getIdLong();
+        String year = params.isEmpty() ? null : params;
+        event.deferEdit().queue();
+
+        // Reset entire log in database (or a specified year)
+        bot.logs.reset(userID, year).whenComplete((result, error) -> {
+            String text;
+            if (error != null) {
+                text = (error instanceof RejectedExecutionException || error.getCause() instanceof RejectedExecutionException)
+                        ? "The dose log is busy right now! Please try again in a moment."
+                        : "An error occurred while accessing the dose log!";
+                event.getHook().editOriginalEmbeds(EmbedUtils.createError(text)).setComponents().queue();
+                return;
+            }
+            text = (year == null)
+                    ? ":wastebasket: <@"+userID+"> has reset their entire dose log!"
+                    : ":wastebasket: <@"+userID+"> has reset their dose log for the year "+year+".";
+            event.getHook().editOriginalEmbeds(EmbedUtils.createDefault(text)).setComponents().queue();
+        });
+    }
+
+    /**
+     * Shows totals and averages from the user's log.
+     */
+    private void executeStats(SlashCommandInteractionEvent event, CommandReply reply) {
+        // Get user
+        OptionMapping userOption = event.getOption("user");
+        User user = (userOption != null) ? userOption.getAsUser() : event.getUser();
+        long userID = user.getIdLong();
+
+        // Read pre-aggregated stats from database
+        bot.logs.stats(userID).whenComplete((stats, error) -> {
+            if (error != null) {
+                replyError(reply, error);
+            } else if (stats == null) {
+                // Error: User does not yet have any data logged
+                String text = (userID == event.getUser().getIdLong()) ? "You have not yet logged any doses!" : "The user <@"+userID+"> has not yet logged any doses!";
+                reply.error(text);
+            } else {
+                reply.send(LogStats.getEmbed(user, stats));
+            }
+        });
+    }
+
+    /**
+     * Sends the user's log (or a year of it) as a compressed file.
+     */
+    private void executeExport(SlashCommandInteractionEvent event, CommandReply reply) {
         // Get command data
         long userID = event.getUser().getIdLong();
+        OptionMapping formatOption = event.getOption("format");
+        LogExporter.Format format = (formatOption != null && formatOption.getAsString().equals("json")) ? LogExporter.Format.JSON : LogExporter.Format.CSV;
         OptionMapping yearOption = event.getOption("year");
-        Bson filter = Filters.eq("user", userID);
-
-        // Reset entire log in database (if year not specified)
-        if (yearOption == null) {
-            bot.database.logs.deleteOne(filter);
-            String reply = ":wastebasket: <@"+userID+"> has reset their entire dose log!";
-            event.replyEmbeds(EmbedUtils.createDefault(reply)).queue();
-            return;
-        }
+        String year = (yearOption != null) ? yearOption.getAsString() : null;
+
+        // Export can take a while for large logs, so defer and send the file when it's ready
+        reply.defer(true);
+        bot.logs.export(userID, year, format).whenComplete((export, error) -> {
+            if (error != null) {
+                String text = (error instanceof RejectedExecutionException || error.getCause() instanceof RejectedExecutionException)
+                        ? "The dose log is busy right now! Please try again in a moment."
+                        : "An error occurred while exporting your dose log!";
+                reply.error(text);
+                return;
+            }
+
+            try {
+                // Error checking
+                if (export.count() == 0) {
+                    String text = (year == null) ? "You have not yet logged any doses!" : "The year **"+year+"** does not yet have any logged doses!";
+                    reply.error(text);
+                    deleteQuietly(export.file());
+                    return;
+                } else if (Files.size(export.file()) > MAX_EXPORT_SIZE) {
+                    reply.error("Your dose log is too large to send! Try exporting a single year.");
+                    deleteQuietly(export.file());
+                    return;
+                }
+
+                // Send file and clean up once uploaded
+                String fileName = "dose-log-" + ((year != null) ? year : "all") + "." + format.extension + ".gz";
+                String text = ":floppy_disk: Exported **" + export.count() + "** doses.";
+                reply.send(new MessageCreateBuilder()
+                        .setEmbeds(EmbedUtils.createDefault(text))
+                        .setFiles(FileUpload.fromData(export.file(), fileName))
+                        .build(), true)
+                        .whenComplete((hook, failure) -> deleteQuietly(export.file()));
+            } catch (IOException e) {
+                reply.error("An error occurred while exporting your dose log!");
+                deleteQuietly(export.file());
+            }
+        });
+    }
 
-        // Reset a specified year for log in database
-        String year = yearOption.getAsString();
-        Bson update = Updates.unset("doses."+year);
-        bot.database.logs.updateOne(filter, update);
-        String reply = ":wastebasket: <@"+userID+"> has reset their dose log for the year "+year+".";
-        event.replyEmbeds(EmbedUtils.createDefault(reply)).queue();
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) { }
     }
 }
@@ -4,19 +4,23 @@ import drugsafe.DrugSafe;
 import drugsafe.commands.Category;
 import drugsafe.commands.Command;
 import drugsafe.commands.CommandRegistry;
+import drugsafe.commands.CommandReply;
+import drugsafe.listeners.PageRenderer;
+import drugsafe.listeners.PageSource;
 import drugsafe.listeners.PaginationListener;
 import drugsafe.util.embeds.EmbedColor;
 import drugsafe.util.embeds.EmbedUtils;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
-import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Command that shows help menu for bot commands.
@@ -39,9 +43,12 @@ public class HelpCommand extends Command {
         }
         this.args.add(data);
         this.args.add(new OptionData(OptionType.STRING, "command", "See details for this command"));
+
+        // Render category pages when their buttons are pressed
+        PaginationListener.registerRenderer("help", this::renderPage);
     }
 
-    public void execute(SlashCommandInteractionEvent event) {
+    public void execute(SlashCommandInteractionEvent event, CommandReply reply) {
         // Create a hashmap that groups commands by categories.
         HashMap<Category, List<Command>> categories = new LinkedHashMap<>();
         EmbedBuilder builder = new EmbedBuilder().setColor(EmbedColor.DEFAULT.color);
@@ -55,27 +62,28 @@ public class HelpCommand extends Command {
         OptionMapping option = event.getOption("category");
         OptionMapping option2 = event.getOption("command");
         if (option != null && option2 != null) {
-            event.replyEmbeds(EmbedUtils.createError("Please only give one optional argument and try again.")).queue();
+            reply.send(EmbedUtils.createError("Please only give one optional argument and try again."));
         } else if (option != null) {
             // Display category commands menu
             Category category = Category.valueOf(option.getAsString().toUpperCase());
-            List<MessageEmbed> embeds = buildCategoryMenu(category, categories.get(category));
-            if (embeds.isEmpty()) {
+            CategoryPages pages = new CategoryPages(category, categories.get(category));
+            if (pages.getEntryCount() == 0) {
                 // No commands for this category
                 EmbedBuilder embed = new EmbedBuilder()
                         .setTitle(category.emoji + "  **%s Commands**".formatted(category.name))
                         .setDescription("Coming soon...")
                         .setColor(EmbedColor.DEFAULT.color);
-                event.replyEmbeds(embed.build()).queue();
+                reply.send(embed.build());
                 return;
             }
-            // Send paginated help menu
-            ReplyCallbackAction action = event.replyEmbeds(embeds.get(0));
-            if (embeds.size() > 1) {
-                PaginationListener.sendPaginatedMenu(event.getUser().getId(), action, embeds);
+            // Send paginated help menu (later pages are built when they are shown)
+            MessageEmbed firstPage = pages.getPage(0);
+            if (pages.getPageCount() > 1) {
+                if (PaginationListener.stateless) PaginationListener.sendStatelessMenu("help", event.getUser().getId(), category.name(), reply, firstPage, pages.getPageCount());
+                else PaginationListener.sendPaginatedMenu(event.getUser().getId(), reply, firstPage, pages);
                 return;
             }
-            action.queue();
+            reply.send(firstPage);
         } else if (option2 != null) {
             // Display command details menu
             Command cmd = CommandRegistry.commandsMap.get(option2.getAsString());
@@ -92,10 +100,10 @@ public class HelpCommand extends Command {
                 }
                 builder.addField("Usage:", usages.toString(), false);
                 builder.addField("Permission:", getPermissions(cmd), false);
-                event.replyEmbeds(builder.build()).queue();
+                reply.send(builder.build());
             } else {
                 // Command specified doesn't exist.
-                event.replyEmbeds(EmbedUtils.createError("No command called \"" + option2.getAsString() + "\" found.")).queue();
+                reply.send(EmbedUtils.createError("No command called \"" + option2.getAsString() + "\" found."));
             }
         } else {
             // Display default menu
@@ -105,47 +113,86 @@ public class HelpCommand extends Command {
                 String value = "`/help " + categoryName + "`";
                 builder.addField(category.emoji + " " + category.name, value, true);
             });
-            event.replyEmbeds(builder.build()).queue();
+            reply.send(builder.build());
         }
     }
 
     /**
-     * Builds a menu with all the commands in a specified category.
-     *
-     * @param category the category to build a menu for.
-     * @param commands a list of the commands in this category.
-     * @return a list of MessageEmbed objects for pagination.
+     * The pages of a menu with all the commands in a specified category.
+     * Each page only builds the usage text for its own commands.
      */
-    public List<MessageEmbed> buildCategoryMenu(Category category, List<Command> commands) {
-        List<MessageEmbed> embeds = new ArrayList<>();
-        EmbedBuilder embed = new EmbedBuilder();
-        embed.setTitle(category.emoji + "  **%s Commands**".formatted(category.name));
-        embed.setColor(EmbedColor.DEFAULT.color);
-
-        int counter = 0;
-        for (Command cmd : commands) {
-            if (cmd.subCommands.isEmpty()) {
-                embed.appendDescription("`" + getUsage(cmd) + "`\n" + cmd.description + "\n\n");
-                counter++;
-                if (counter % COMMANDS_PER_PAGE == 0) {
-                    embeds.add(embed.build());
-                    embed.setDescription("");
-                    counter = 0;
-                }
-            } else {
-                for (SubcommandData sub : cmd.subCommands) {
-                    embed.appendDescription("`" + getUsage(sub, cmd.name) + "`\n" + sub.getDescription() + "\n\n");
+    public class CategoryPages implements PageSource {
+
+        private final Category category;
+        private final List<Command> commands;
+        private final int entries;
+
+        /**
+         * @param category the category to build a menu for.
+         * @param commands a list of the commands in this category.
+         */
+        public CategoryPages(Category category, List<Command> commands) {
+            this.category = category;
+            this.commands = commands;
+            int count = 0;
+            for (Command cmd : commands) {
+                count += cmd.subCommands.isEmpty() ? 1 : cmd.subCommands.size();
+            }
+            this.entries = count;
+        }
+
+        /**
+         * @return the number of commands and subcommands listed in the menu.
+         */
+        public int getEntryCount() {
+            return entries;
+        }
+
+        @Override
+        public int getPageCount() {
+            return Math.max(1, (entries + COMMANDS_PER_PAGE - 1) / COMMANDS_PER_PAGE);
+        }
+
+        @Override
+        public MessageEmbed getPage(int page) {
+            EmbedBuilder embed = new EmbedBuilder();
+            embed.setTitle(category.emoji + "  **%s Commands**".formatted(category.name));
+            embed.setColor(EmbedColor.DEFAULT.color);
+
+            int first = page * COMMANDS_PER_PAGE;
+            int last = first + COMMANDS_PER_PAGE;
+            int counter = 0;
+            for (Command cmd : commands) {
+                if (counter >= last) break;
+                if (cmd.subCommands.isEmpty()) {
+                    if (counter >= first) embed.appendDescription("`" + getUsage(cmd) + "`\n" + cmd.description + "\n\n");
                     counter++;
-                    if (counter % COMMANDS_PER_PAGE == 0) {
-                        embeds.add(embed.build());
-                        embed.setDescription("");
-                        counter = 0;
+                } else {
+                    for (SubcommandData sub : cmd.subCommands) {
+                        if (counter >= first && counter < last) embed.appendDescription("`" + getUsage(sub, cmd.name) + "`\n" + sub.getDescription() + "\n\n");
+                        counter++;
                     }
                 }
             }
+            return embed.build();
+        }
+    }
+
+    /**
+     * Renders a page of a stateless category menu.
+     *
+     * @param params the name of the category.
+     */
+    private CompletableFuture<PageRenderer.Page> renderPage(User user, String params, int page) {
+        Category category = Category.valueOf(params);
+        List<Command> commands = new ArrayList<>();
+        for (Command cmd : CommandRegistry.commands) {
+            if (cmd.category == category) commands.add(cmd);
         }
-        if (counter != 0) embeds.add(embed.build());
-        return embeds;
+        CategoryPages pages = new CategoryPages(category, commands);
+        if (pages.getEntryCount() == 0) return CompletableFuture.completedFuture(null);
+        int index = Math.min(page, pages.getPageCount() - 1);
+        return CompletableFuture.completedFuture(new PageRenderer.Page(pages.getPage(index), index, pages.getPageCount()));
     }
 
     /**
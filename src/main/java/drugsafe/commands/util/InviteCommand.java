@@ -3,9 +3,11 @@ package drugsafe.commands.util;
 import drugsafe.DrugSafe;
 import drugsafe.commands.Category;
 import drugsafe.commands.Command;
+import drugsafe.commands.CommandReply;
 import drugsafe.util.embeds.EmbedUtils;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 
 /**
  * Creates button links to invite bot and join the server.
@@ -22,10 +24,11 @@ public class InviteCommand extends Command {
     }
 
     @Override
-    public void execute(SlashCommandInteractionEvent event) {
+    public void execute(SlashCommandInteractionEvent event, CommandReply reply) {
         Button b1 = Button.link("https://discord.com/oauth2/authorize?client_id=1116516703497621555&scope=bot&permissions=311361", "Invite Bot");
         Button b2 = Button.link("https://discord.gg/SWrb3MHVCd", "DrugSafe Server");
-        event.replyEmbeds(EmbedUtils.createDefault(":robot: Click the button below to add me to your server!"))
-                .addActionRow(b1, b2).queue();
+        reply.send(new MessageCreateBuilder()
+                .setEmbeds(EmbedUtils.createDefault(":robot: Click the button below to add me to your server!"))
+                .addActionRow(b1, b2).build(), false);
     }
 }
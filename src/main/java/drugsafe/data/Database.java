@@ -6,18 +6,39 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateOptions;
+import drugsafe.data.logs.Entry;
 import drugsafe.data.logs.Log;
+import drugsafe.data.logs.LogCodecProvider;
+import drugsafe.data.logs.LogMigration;
+import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.conversions.Bson;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
 /**
  * Manages data between the bot and the MongoDB database.
+ * Database work for commands runs on a bounded pool sized to the connection pool (see {@link #supplyAsync}),
+ * so commands never block JDA threads while waiting on MongoDB.
  *
  * @author TechnoVision
  */
@@ -25,28 +46,177 @@ public class Database {
 
     public static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
 
+    /** Order in which doses are listed and numbered, oldest first */
+    public static final Bson LOG_ORDER = Sorts.ascending("date", "_id");
+
+    /** Reverse of {@link #LOG_ORDER}, for showing the newest doses first */
+    public static final Bson LOG_ORDER_NEWEST = Sorts.descending("date", "_id");
+
     /** Collections */
     public @NotNull MongoCollection<Log> logs;
+    public @NotNull MongoCollection<Entry> doses;
+    public @NotNull MongoCollection<Document> stats;
+
+    /** Moves legacy logs into the doses collection */
+    public @NotNull LogMigration migration;
+
+    /** Runs database work off JDA threads */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Connect to database using MongoDB URI and default pool settings.
+     *
+     * @param uri MongoDB uri string.
+     */
+    public Database(String uri, String databaseName) {
+        this(uri, databaseName, Settings.DEFAULT);
+    }
 
     /**
      * Connect to database using MongoDB URI and
      * initialize any collections that don't exist.
      *
      * @param uri MongoDB uri string.
+     * @param settings connection pool and timeout settings (these override options in the URI).
      */
-    public Database(String uri, String databaseName) {
+    public Database(String uri, String databaseName, Settings settings) {
         // Setup MongoDB database with URI.
-        CodecRegistry pojoCodecRegistry = fromProviders(PojoCodecProvider.builder().automatic(true).build());
+        CodecRegistry pojoCodecRegistry = fromProviders(new LogCodecProvider(), PojoCodecProvider.builder().automatic(true).build());
         CodecRegistry codecRegistry = fromRegistries(MongoClientSettings.getDefaultCodecRegistry(), pojoCodecRegistry);
+        DatabaseMetrics metrics = new DatabaseMetrics(settings.slowThreshold());
         MongoClientSettings clientSettings = MongoClientSettings.builder()
                 .applyConnectionString(new ConnectionString(uri))
+                .addCommandListener(metrics)
+                .applyToConnectionPoolSettings(pool -> pool
+                        .addConnectionPoolListener(metrics)
+                        .maxSize(settings.maxPoolSize())
+                        .minSize(settings.minPoolSize())
+                        .maxWaitTime(settings.maxWaitTime().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToSocketSettings(socket -> socket
+                        .connectTimeout((int) settings.connectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout((int) settings.socketTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(cluster -> cluster
+                        .serverSelectionTimeout(settings.serverSelectionTimeout().toMillis(), TimeUnit.MILLISECONDS))
                 .codecRegistry(codecRegistry)
                 .build();
         MongoClient mongoClient = MongoClients.create(clientSettings);
+
+        // One worker per pooled connection, extra work waits in a bounded queue
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(settings.maxPoolSize(), settings.maxPoolSize(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.maxWaitQueue()), runnable -> {
+                    Thread thread = new Thread(runnable, "mongo-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
         MongoDatabase database = mongoClient.getDatabase(databaseName);
 
         // Initialize collections if they don't exist.
         logs = database.getCollection("logs", Log.class);
         logs.createIndex(Indexes.descending("user"));
+        doses = database.getCollection("doses", Entry.class);
+        doses.createIndex(Indexes.ascending("user", "date", "_id"));
+        stats = database.getCollection("stats");
+        stats.createIndex(Indexes.ascending("user"), new IndexOptions().unique(true));
+
+        // Migrate legacy logs to per-dose documents in the background
+        migration = new LogMigration(logs, doses);
+        migration.start();
+    }
+
+    /**
+     * Runs blocking database work on the database pool.
+     * Fails with {@link RejectedExecutionException} if the wait queue is full.
+     *
+     * @param task the work to run.
+     * @return a future completed with the result of the task.
+     */
+    public <T> CompletableFuture<T> supplyAsync(@NotNull Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return the number of database tasks running or waiting.
+     */
+    public int getPending() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    /**
+     * Removes the dose at a position in a user's year, in {@link #LOG_ORDER}.
+     * The position is resolved to an id and date from the index alone (no documents are read),
+     * then the dose is deleted only if it still has that id, user, and date, so identical doses,
+     * concurrent adds, and a dose rewritten in the meantime are left alone.
+     *
+     * @param user the ID of the user.
+     * @param year the year as a string, e.g. "2023".
+     * @param index the position of the dose, starting at 0.
+     * @return the removed dose, or null if there is no dose at that position.
+     * @throws ConcurrentModificationException if the dose at that position was removed or changed concurrently.
+     */
+    public @Nullable Entry removeDose(long user, String year, int index) {
+        Entry target = doses.find(yearFilter(user, year))
+                .sort(LOG_ORDER)
+                .skip(index)
+                .projection(Projections.include("_id", "date"))
+                .first();
+        if (target == null) return null;
+        Entry removed = doses.findOneAndDelete(Filters.and(
+                Filters.eq("_id", target.getId()),
+                Filters.eq("user", user),
+                Filters.eq("date", target.getDate())));
+        if (removed == null) throw new ConcurrentModificationException("Dose #" + (index + 1) + " changed while it was being removed");
+        return removed;
+    }
+
+    /**
+     * Filter for every dose logged by a user.
+     *
+     * @param user the ID of the user.
+     * @return a filter for the doses collection.
+     */
+    public static Bson userFilter(long user) {
+        return Filters.eq("user", user);
+    }
+
+    /**
+     * Filter for the doses logged by a user in a calendar year (in the bot's time zone).
+     * Uses the (user, date) index as a range scan.
+     *
+     * @param user the ID of the user.
+     * @param year the year as a string, e.g. "2023".
+     * @return a filter for the doses collection.
+     */
+    public static Bson yearFilter(long user, String year) {
+        int y = Integer.parseInt(year);
+        ZoneId zone = ZoneId.systemDefault();
+        Date start = Date.from(LocalDate.of(y, 1, 1).atStartOfDay(zone).toInstant());
+        Date end = Date.from(LocalDate.of(y + 1, 1, 1).atStartOfDay(zone).toInstant());
+        return Filters.and(Filters.eq("user", user), Filters.gte("date", start), Filters.lt("date", end));
+    }
+
+    /**
+     * Connection pool and timeout settings.
+     *
+     * @param maxPoolSize the maximum number of connections (and database worker threads).
+     * @param minPoolSize the number of connections kept open while idle.
+     * @param maxWaitQueue the maximum number of database tasks waiting for a worker before new ones are rejected.
+     * @param maxWaitTime the maximum time to wait for a pooled connection.
+     * @param connectTimeout the maximum time to open a connection.
+     * @param socketTimeout the maximum time to wait for a response.
+     * @param serverSelectionTimeout the maximum time to find a suitable server.
+     * @param slowThreshold commands taking longer than this are logged.
+     */
+    public record Settings(int maxPoolSize, int minPoolSize, int maxWaitQueue, Duration maxWaitTime,
+                           Duration connectTimeout, Duration socketTimeout, Duration serverSelectionTimeout,
+                           Duration slowThreshold) {
+
+        public static final Settings DEFAULT = new Settings(20, 0, 500, Duration.ofSeconds(2),
+                Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(5), Duration.ofMillis(100));
     }
-}
\ No newline at end of file
+}
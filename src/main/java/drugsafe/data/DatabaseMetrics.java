@@ -0,0 +1,126 @@
+package drugsafe.data;
+
+import com.mongodb.event.*;
+import drugsafe.util.LatencyHistogram;
+import drugsafe.util.Metrics;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Driver listener that records MongoDB command latency per command and collection,
+ * connection checkout wait time, and connection pool usage, all exposed through {@link Metrics}.
+ * Commands slower than a threshold are logged.
+ *
+ * @author TechnoVision
+ */
+public class DatabaseMetrics extends ConnectionPoolListenerAdapter implements CommandListener {
+
+    private final long slowNanos;
+
+    /** Collection of each command in flight, by request ID */
+    private final Map<Integer, String> collections = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram checkoutWait = new LatencyHistogram();
+    private final ThreadLocal<Long> checkoutStart = new ThreadLocal<>();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder slow = new LongAdder();
+
+    /**
+     * @param slowThreshold commands taking longer than this are logged.
+     */
+    public DatabaseMetrics(Duration slowThreshold) {
+        this.slowNanos = slowThreshold.toNanos();
+        checkoutWait.register("mongodb.pool.checkout");
+        Metrics.register("mongodb.pool.in_use", inUse::get);
+        Metrics.register("mongodb.pool.open", open::get);
+        Metrics.register("mongodb.slow", slow::sum);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        // Most commands name their collection as the value of the command name field
+        BsonValue target = event.getCommand().get(event.getCommandName());
+        String collection = (target != null && target.isString()) ? target.asString().getValue() : "none";
+        collections.put(event.getRequestId(), collection);
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        String key = key(event.getCommandName(), collections.remove(event.getRequestId()));
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        commands.computeIfAbsent(key, k -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.register("mongodb." + k);
+            return histogram;
+        }).record(nanos);
+        checkSlow(key, nanos);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        String key = key(event.getCommandName(), collections.remove(event.getRequestId()));
+        failures.computeIfAbsent(key, k -> {
+            LongAdder counter = new LongAdder();
+            Metrics.register("mongodb." + k + ".failures", counter::sum);
+            return counter;
+        }).increment();
+        checkSlow(key, event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void checkSlow(String key, long nanos) {
+        if (nanos < slowNanos) return;
+        slow.increment();
+        System.out.println("WARNING: Slow MongoDB " + key + " took " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+    }
+
+    private static String key(String command, String collection) {
+        return command + "." + ((collection != null) ? collection : "none");
+    }
+
+    // The 3.12 driver only reports checkout start and end through the wait queue events,
+    // which are fired on the checking-out thread for every checkout.
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        checkoutStart.set(System.nanoTime());
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        Long start = checkoutStart.get();
+        if (start == null) return;
+        checkoutStart.remove();
+        checkoutWait.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        inUse.incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        inUse.decrementAndGet();
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        open.incrementAndGet();
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        open.decrementAndGet();
+    }
+}
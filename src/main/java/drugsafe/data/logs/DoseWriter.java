@@ -0,0 +1,414 @@
+package drugsafe.data.logs;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.types.ObjectId;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind queue for logged doses.
+ * Doses are appended to a local journal and acknowledged at once, then flushed to MongoDB
+ * in unordered bulk writes when a batch fills up or the flush interval passes.
+ * <p>
+ * The journal is split into segments: a flush starts a new segment and deletes the old one once its doses are written,
+ * so any segment left on disk after a crash holds doses that may not have reached the database and is replayed on startup.
+ * Every dose is written as an upsert by id, so replaying a dose that was already flushed is harmless.
+ * <p>
+ * Journal syncs are group commits: doses are appended under the queue lock, then one submitter syncs the journal
+ * for everyone who appended before it while the others wait. Doses the database rejects permanently
+ * (e.g. failing validation) are moved to a dead-letter file next to the journal instead of being retried forever.
+ *
+ * @author TechnoVision
+ */
+public class DoseWriter implements Closeable {
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    /** Write error codes that may succeed on retry (timeouts, shutdowns, and primary step-downs) */
+    private static final Set<Integer> TRANSIENT_ERRORS = Set.of(50, 91, 189, 262, 10107, 11600, 11602, 13435);
+
+    private final MongoCollection<Entry> doses;
+    private final Path path;
+    private final int batchSize;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dose-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Guards the pending queue and the journal */
+    private final Object lock = new Object();
+    /** Serializes flushes so a caller waiting on a flush sees every earlier dose written */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /** Serializes journal syncs and segment closes */
+    private final Object syncLock = new Object();
+
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final Map<Long, Integer> pendingUsers = new HashMap<>();
+    private FileChannel journal;
+    private Path segment;
+    private long sequence;
+    /** Number of doses appended to the journal, guarded by the lock */
+    private long appended;
+    /** Number of appended doses known to be on disk, guarded by the sync lock */
+    private volatile long synced;
+    private final Path deadLetters;
+
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    /**
+     * Opens the journal, replays any doses left over from a previous run, and starts flushing.
+     *
+     * @param doses the collection doses are written to.
+     * @param path the journal file (segments are stored next to it with a numeric suffix).
+     * @param batchSize the maximum number of doses per bulk write, also the size that triggers an early flush.
+     * @param interval the maximum time a dose waits in the queue.
+     * @throws IOException if the journal can't be read or written.
+     */
+    public DoseWriter(@NotNull MongoCollection<Entry> doses, @NotNull Path path, int batchSize, @NotNull Duration interval) throws IOException {
+        this.doses = doses;
+        this.path = path.toAbsolutePath();
+        this.batchSize = batchSize;
+        this.deadLetters = Path.of(this.path + ".dead");
+
+        // Move doses from old segments into a fresh one
+        List<Path> oldSegments = segments();
+        for (Path old : oldSegments) {
+            sequence = Math.max(sequence, sequenceOf(old));
+        }
+        openSegment();
+        synchronized (lock) {
+            for (Path old : oldSegments) {
+                for (Entry entry : read(old)) add(entry);
+            }
+        }
+        sync(appended);
+        for (Path old : oldSegments) Files.delete(old);
+        if (!pending.isEmpty()) System.out.println("Replaying " + pending.size() + " journaled doses.");
+
+        long millis = interval.toMillis();
+        executor.scheduleWithFixedDelay(this::flushQuietly, 0, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Journals a dose and queues it for the database. Returns once the dose is on disk.
+     *
+     * @param entry the dose to store, with its id and user set.
+     * @throws IOException if the dose could not be journaled (it is not queued).
+     */
+    public void submit(@NotNull Entry entry) throws IOException {
+        int size;
+        long ticket;
+        synchronized (lock) {
+            add(entry);
+            size = pending.size();
+            ticket = appended;
+        }
+        sync(ticket);
+        if (size >= batchSize) executor.execute(this::flushQuietly);
+    }
+
+    /**
+     * Waits until the journal is on disk up to a dose, syncing it for every dose appended so far if nobody else is.
+     *
+     * @param ticket the number of doses appended when the caller's dose was.
+     */
+    private void sync(long ticket) throws IOException {
+        if (synced >= ticket) return;
+        synchronized (syncLock) {
+            if (synced >= ticket) return;
+            FileChannel channel;
+            long upTo;
+            synchronized (lock) {
+                channel = journal;
+                upTo = appended;
+            }
+            // Segments are only closed under the sync lock, after being synced, so the channel is still open
+            channel.force(false);
+            syncs.increment();
+            synced = upTo;
+        }
+    }
+
+    /**
+     * Writes a user's queued doses (and any queued before them) so reads see every dose they logged.
+     * Returns at once if the user has nothing queued.
+     *
+     * @param user the ID of the user.
+     */
+    public void flushUser(long user) {
+        boolean queued;
+        synchronized (lock) {
+            queued = pendingUsers.containsKey(user);
+        }
+        if (queued) flushQuietly();
+    }
+
+    /**
+     * Writes every queued dose to the database.
+     * On a transient failure the doses that weren't written stay queued and journaled for the next attempt,
+     * doses rejected permanently are moved to the dead-letter file.
+     */
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            List<Entry> batch;
+            Path retired;
+            FileChannel retiredJournal;
+            long retiredAppended;
+            synchronized (lock) {
+                if (pending.isEmpty()) return;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                retired = segment;
+                retiredJournal = journal;
+                retiredAppended = appended;
+                openSegment();
+            }
+            // Submitters still waiting on the old segment need it synced before it is closed
+            synchronized (syncLock) {
+                if (synced < retiredAppended) {
+                    retiredJournal.force(false);
+                    syncs.increment();
+                    synced = retiredAppended;
+                }
+                retiredJournal.close();
+            }
+
+            List<Entry> retry = new ArrayList<>();
+            List<Entry> dead = new ArrayList<>();
+            RuntimeException error = null;
+            for (int i = 0; i < batch.size(); i += batchSize) {
+                List<Entry> chunk = batch.subList(i, Math.min(i + batchSize, batch.size()));
+                if (error != null) {
+                    retry.addAll(chunk);
+                    continue;
+                }
+                List<WriteModel<Entry>> writes = new ArrayList<>(chunk.size());
+                for (Entry entry : chunk) writes.add(new ReplaceOneModel<>(Filters.eq("_id", entry.getId()), entry, UPSERT));
+                try {
+                    doses.bulkWrite(writes, UNORDERED);
+                    batches.increment();
+                } catch (MongoBulkWriteException e) {
+                    // Unordered: every dose without a write error was written
+                    batches.increment();
+                    if (e.getWriteConcernError() != null) {
+                        retry.addAll(chunk);
+                        error = e;
+                        continue;
+                    }
+                    for (BulkWriteError writeError : e.getWriteErrors()) {
+                        Entry entry = chunk.get(writeError.getIndex());
+                        if (TRANSIENT_ERRORS.contains(writeError.getCode())) {
+                            retry.add(entry);
+                            error = e;
+                        } else {
+                            System.out.println("ERROR: Dose " + entry.getId() + " was rejected: " + writeError.getMessage());
+                            dead.add(entry);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    retry.addAll(chunk);
+                    error = e;
+                }
+            }
+
+            // Put doses to retry back in front of newer doses and journal them again
+            long ticket;
+            synchronized (lock) {
+                for (Entry entry : retry) append(entry);
+                for (int i = retry.size() - 1; i >= 0; i--) pending.addFirst(retry.get(i));
+                Set<Entry> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+                queued.addAll(retry);
+                for (Entry entry : batch) {
+                    if (!queued.contains(entry)) pendingUsers.computeIfPresent(entry.getUser(), (user, count) -> count > 1 ? count - 1 : null);
+                }
+                ticket = appended;
+            }
+            sync(ticket);
+            if (!dead.isEmpty()) deadLetter(dead);
+            flushed.add(batch.size() - retry.size() - dead.size());
+            Files.deleteIfExists(retired);
+            if (error != null) {
+                failures.increment();
+                throw error;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Appends doses the database will never accept to the dead-letter file, where they are kept for manual recovery.
+     */
+    private void deadLetter(List<Entry> entries) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : entries) lines.append(toJson(entry)).append('\n');
+        try (FileChannel channel = FileChannel.open(deadLetters, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) channel.write(bytes);
+            channel.force(false);
+        }
+        deadLettered.add(entries.size());
+        System.out.println("ERROR: Moved " + entries.size() + " rejected doses to " + deadLetters.getFileName());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not flush logged doses: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background flush and writes anything still queued.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        flushQuietly();
+        synchronized (syncLock) {
+            synchronized (lock) {
+                try {
+                    journal.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    public int getPending() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public long getFlushed() {
+        return flushed.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    /** Journals and queues a dose, must hold the lock */
+    private void add(Entry entry) throws IOException {
+        append(entry);
+        pending.add(entry);
+        pendingUsers.merge(entry.getUser(), 1, Integer::sum);
+    }
+
+    /** Appends one dose to the current segment as a JSON line without syncing it, must hold the lock */
+    private void append(Entry entry) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) journal.write(line);
+        appended++;
+    }
+
+    private static JsonObject toJson(Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", entry.getId().toHexString());
+        json.addProperty("user", entry.getUser());
+        json.addProperty("drug", entry.getDrug());
+        json.addProperty("dose", entry.getDose());
+        json.addProperty("units", entry.getUnits());
+        json.addProperty("route", entry.getRoute());
+        json.addProperty("date", entry.getDate().getTime());
+        return json;
+    }
+
+    private void openSegment() throws IOException {
+        segment = Path.of(path + "." + (++sequence));
+        journal = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads every complete dose from a segment. A torn last line from a crash mid-write is skipped.
+     */
+    private static List<Entry> read(Path segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+            try {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                Entry entry = new Entry(
+                        json.get("drug").getAsString(),
+                        json.get("dose").getAsDouble(),
+                        json.get("units").getAsString(),
+                        json.get("route").getAsString(),
+                        new Date(json.get("date").getAsLong())
+                );
+                entry.setId(new ObjectId(json.get("id").getAsString()));
+                entry.setUser(json.get("user").getAsLong());
+                entries.add(entry);
+            } catch (RuntimeException e) {
+                System.out.println("ERROR: Skipping malformed journal line in " + segment.getFileName());
+            }
+        }
+        return entries;
+    }
+
+    private List<Path> segments() throws IOException {
+        Path dir = path.getParent();
+        String prefix = path.getFileName() + ".";
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir);
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix) && sequenceOf(file) > 0)
+                    .sorted(Comparator.comparingLong(DoseWriter::sequenceOf))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package drugsafe.data.logs;
 
 import drugsafe.util.embeds.EmbedColor;
 import net.dv8tion.jda.api.EmbedBuilder;
+import org.bson.types.ObjectId;
 
 import java.text.DecimalFormat;
 import java.util.Date;
@@ -9,7 +10,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * POJO object that stores a single logged dose
+ * POJO object that stores a single logged dose (one document per dose)
  *
  * @author TechnoVision
  */
@@ -26,6 +27,10 @@ public class Entry {
 
     private static final DecimalFormat numberFormat = new DecimalFormat("#,###.##");
 
+    private ObjectId id;
+
+    private long user;
+
     private String drug;
 
     private double dose;
@@ -46,6 +51,12 @@ public class Entry {
         this.date = new Date();
     }
 
+    public Entry(long user, String drug, double dose, String units, String route) {
+        this(drug, dose, units, route);
+        this.id = new ObjectId();
+        this.user = user;
+    }
+
     public Entry(String drug, double dose, String units, String route, Date date) {
         this.drug = drug;
         this.dose = dose;
@@ -71,6 +82,22 @@ public class Entry {
         return drug + " " + numberFormat.format(dose) + units + " " + routeEmojis.get(route);
     }
 
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public long getUser() {
+        return user;
+    }
+
+    public void setUser(long user) {
+        this.user = user;
+    }
+
     public String getDrug() {
         return drug;
     }
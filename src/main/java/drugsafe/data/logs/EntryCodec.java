@@ -0,0 +1,132 @@
+package drugsafe.data.logs;
+
+import org.bson.*;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact BSON codec for logged doses, used instead of the reflective POJO codec.
+ * Known routes and units are stored as small integer codes, anything else is stored as a string.
+ * Decoding accepts both forms, so documents written by the POJO codec still read correctly.
+ * <p>
+ * Code tables are append-only: a code must never be reused for a different value.
+ *
+ * @author TechnoVision
+ */
+public class EntryCodec implements CollectibleCodec<Entry> {
+
+    /** Route codes, by index */
+    public static final List<String> ROUTES = List.of("oral", "smoked", "insufflated", "rectal", "intravenous", "other");
+
+    /** Units codes, by index */
+    public static final List<String> UNITS = List.of("\u03bcg", "mg", "g", "mL", "drinks", "other");
+
+    @Override
+    public void encode(BsonWriter writer, Entry entry, EncoderContext context) {
+        writer.writeStartDocument();
+        if (entry.getId() != null) writer.writeObjectId("_id", entry.getId());
+        writer.writeInt64("user", entry.getUser());
+        writeString(writer, "drug", entry.getDrug());
+        writer.writeDouble("dose", entry.getDose());
+        writeCode(writer, "units", entry.getUnits(), UNITS);
+        writeCode(writer, "route", entry.getRoute(), ROUTES);
+        if (entry.getDate() != null) writer.writeDateTime("date", entry.getDate().getTime());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Entry decode(BsonReader reader, DecoderContext context) {
+        Entry entry = new Entry();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id" -> entry.setId(reader.readObjectId());
+                case "user" -> entry.setUser(readLong(reader));
+                case "drug" -> entry.setDrug(reader.readString());
+                case "dose" -> entry.setDose(readDouble(reader));
+                case "units" -> entry.setUnits(readCode(reader, UNITS));
+                case "route" -> entry.setRoute(readCode(reader, ROUTES));
+                case "date" -> entry.setDate(new Date(reader.getCurrentBsonType() == BsonType.DATE_TIME ? reader.readDateTime() : readLong(reader)));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return entry;
+    }
+
+    @Override
+    public Class<Entry> getEncoderClass() {
+        return Entry.class;
+    }
+
+    @Override
+    public Entry generateIdIfAbsentFromDocument(Entry entry) {
+        if (entry.getId() == null) entry.setId(new ObjectId());
+        return entry;
+    }
+
+    @Override
+    public boolean documentHasId(Entry entry) {
+        return entry.getId() != null;
+    }
+
+    @Override
+    public BsonValue getDocumentId(Entry entry) {
+        if (entry.getId() == null) throw new IllegalStateException("The entry does not have an _id");
+        return new BsonObjectId(entry.getId());
+    }
+
+    /**
+     * Converts a stored route or units value (code or string) back to its name.
+     *
+     * @param value the stored value, as returned in an aggregation result.
+     * @param codes the code table for the field, or null if the field is never coded.
+     * @return the name, or null if the value is missing.
+     */
+    public static String nameOf(Object value, List<String> codes) {
+        if (codes != null && value instanceof Integer code) return (code >= 0 && code < codes.size()) ? codes.get(code) : "other";
+        return (value != null) ? value.toString() : null;
+    }
+
+    private static void writeCode(BsonWriter writer, String name, String value, List<String> codes) {
+        int code = (value != null) ? codes.indexOf(value) : -1;
+        if (code >= 0) writer.writeInt32(name, code);
+        else writeString(writer, name, value);
+    }
+
+    private static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null) writer.writeString(name, value);
+        else writer.writeNull(name);
+    }
+
+    private static String readCode(BsonReader reader, List<String> codes) {
+        if (reader.getCurrentBsonType() == BsonType.INT32) return nameOf(reader.readInt32(), codes);
+        return reader.readString();
+    }
+
+    private static long readLong(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT32 -> reader.readInt32();
+            case DOUBLE -> (long) reader.readDouble();
+            default -> reader.readInt64();
+        };
+    }
+
+    private static double readDouble(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT32 -> reader.readInt32();
+            case INT64 -> reader.readInt64();
+            default -> reader.readDouble();
+        };
+    }
+}
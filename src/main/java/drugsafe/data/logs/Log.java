@@ -5,17 +5,20 @@ import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 /**
- * POJO object that stores logged doses
+ * POJO object for the legacy log format, one document per user holding every dose.
+ * Kept to migrate old logs, doses are now stored as individual {@link Entry} documents.
  *
  * @author TechnoVision
  */
 public class Log {
 
+    /** Number of doses shown on each page of a log */
+    public static final int PAGE_SIZE = 5;
+
     private long user;
 
     private Map<String, List<Entry>> doses;
@@ -27,54 +30,39 @@ public class Log {
     }
 
     /**
-     * Creates an embed to display log data.
+     * Creates a single page of the log embed.
      * @param user the user whose log is being displayed.
      * @param year the year to display logged doses for.
-     * @return a list of MessageEmbeds with log data.
+     * @param entries the doses on this page, newest first.
+     * @param firstID the dose ID of the first entry on this page (IDs count down from there).
+     * @return a MessageEmbed with log data.
      */
-    public List<MessageEmbed> getEmbed(User user, String year) {
-        // Get entries for the specified year
-        List<Entry> dosesThisYear = doses.get(year);
-        List<MessageEmbed> pages = new ArrayList<>();
-
-        // Initialize EmbedBuilder for the first page
+    public static MessageEmbed getPage(User user, String year, List<Entry> entries, int firstID) {
         EmbedBuilder embed = new EmbedBuilder()
                 .setColor(EmbedColor.DEFAULT.color)
                 .setTitle(":pencil: Dose Log ("+year+")")
                 .setFooter(user.getAsTag(), user.getEffectiveAvatarUrl());
 
-        // Loop over entries for the current year in reverse order and add to embed
-        for (int i = dosesThisYear.size() - 1, fieldCount = 0; i >= 0; i--, fieldCount++) {
-            // Check if we've hit the field limit for the current embed
-            if (fieldCount != 0 && fieldCount % 5 == 0) {
-                // If we have, build the current embed, add it to the list, and start a new one
-                pages.add(embed.build());
-                embed = new EmbedBuilder()
-                        .setColor(EmbedColor.DEFAULT.color)
-                        .setTitle(":pencil: Dose Log ("+year+")")
-                        .setFooter(user.getAsTag(), user.getEffectiveAvatarUrl());
-            }
+        for (int i = 0; i < entries.size(); i++) {
             // Format date
-            Entry entry = dosesThisYear.get(i);
+            Entry entry = entries.get(i);
             long timestampTime = entry.getDate().toInstant().getEpochSecond();
-            String formattedDate = "**[" + (dosesThisYear.size() - fieldCount) + "] "
+            String formattedDate = "**[" + (firstID - i) + "] "
                     + "<t:"+timestampTime+":D>"
-                    + " - " + "<t:"+timestampTime+":t>**";;
+                    + " - " + "<t:"+timestampTime+":t>**";
 
             // Add to embed description
             embed.appendDescription(formattedDate + "\n" + entry + "\n\n");
         }
-        // Add last page
-        pages.add(embed.build());
-        return pages;
+        return embed.build();
     }
 
     /**
-     * Helper function for getEmbed() that finds suffix for day of month.
+     * Helper function for getPage() that finds suffix for day of month.
      * @param n the day of the month
      * @return a string suffix for the day of the month.
      */
-    private String getDayOfMonthSuffix(final int n) {
+    private static String getDayOfMonthSuffix(final int n) {
         if (n < 1 || n > 31) throw new IllegalArgumentException("Illegal day of month");
         if (n >= 11 && n <= 13) return "th";
         return switch (n % 10) {
@@ -0,0 +1,220 @@
+package drugsafe.data.logs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded read-through cache of users' log pages and per-year dose counts.
+ * Users expire after a fixed TTL and the least recently used user is evicted once full.
+ * Any change to a user's log invalidates everything cached for that user.
+ * <p>
+ * Reads take a {@link #stamp(long)} of the user before querying the database and pass it back when caching the result,
+ * so a result read before a concurrent invalidation of that user is never cached.
+ * Stamps are counted per stripe of users, so invalidating one user rarely affects reads of another.
+ *
+ * @author TechnoVision
+ */
+public class LogCache {
+
+    /** Maximum pages cached per user, deeper pages are always read from the database */
+    public static final int MAX_PAGES_PER_USER = 20;
+
+    /** Rough heap cost of a cached dose, not counting its strings */
+    private static final int ENTRY_OVERHEAD = 120;
+    /** Rough heap cost of a cached page or count */
+    private static final int SLOT_OVERHEAD = 64;
+    /** Number of invalidation counters users are spread over (a power of two) */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final int maxUsers;
+    private final long ttlMillis;
+    private final LinkedHashMap<Long, CachedLog> users;
+    private final long[] invalidations = new long[STAMP_STRIPES];
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty log cache.
+     *
+     * @param maxUsers the maximum number of users kept before evicting the least recently used.
+     * @param ttl how long a user's log is served from cache.
+     */
+    public LogCache(int maxUsers, Duration ttl) {
+        this.maxUsers = maxUsers;
+        this.ttlMillis = ttl.toMillis();
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedLog> eldest) {
+                if (size() > LogCache.this.maxUsers) {
+                    bytes -= eldest.getValue().bytes;
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param user the ID of the user whose log is about to be read.
+     * @return a stamp to pass to the put methods for a read that is about to start.
+     */
+    public synchronized long stamp(long user) {
+        return invalidations[stripe(user)];
+    }
+
+    /**
+     * Gets the cached number of doses a user logged in a year.
+     *
+     * @return the dose count, or null if nothing valid is cached.
+     */
+    public synchronized @Nullable Long getCount(long user, @NotNull String year) {
+        CachedLog log = valid(user);
+        Long count = (log != null) ? log.counts.get(year) : null;
+        record(count != null);
+        return count;
+    }
+
+    /**
+     * Gets a cached page of a user's log.
+     *
+     * @return the doses on the page, or null if nothing valid is cached.
+     */
+    public synchronized @Nullable List<Entry> getPage(long user, @NotNull String year, int page) {
+        CachedLog log = valid(user);
+        List<Entry> entries = (log != null) ? log.pages.get(year + ":" + page) : null;
+        record(entries != null);
+        return entries;
+    }
+
+    /**
+     * Caches the number of doses a user logged in a year.
+     *
+     * @param stamp the stamp taken before the count was read.
+     */
+    public synchronized void putCount(long user, @NotNull String year, long count, long stamp) {
+        if (stamp != invalidations[stripe(user)]) return;
+        CachedLog log = getOrCreate(user);
+        if (log.counts.put(year, count) == null) add(log, SLOT_OVERHEAD);
+    }
+
+    /**
+     * Caches a page of a user's log.
+     *
+     * @param stamp the stamp taken before the page was read.
+     */
+    public synchronized void putPage(long user, @NotNull String year, int page, @NotNull List<Entry> entries, long stamp) {
+        if (stamp != invalidations[stripe(user)]) return;
+        CachedLog log = getOrCreate(user);
+        if (log.pages.size() >= MAX_PAGES_PER_USER) return;
+        if (log.pages.put(year + ":" + page, List.copyOf(entries)) != null) return;
+        long size = SLOT_OVERHEAD;
+        for (Entry entry : entries) size += estimate(entry);
+        add(log, size);
+    }
+
+    /**
+     * Drops everything cached for a user. Must be called whenever their doses change.
+     *
+     * @param user the ID of the user.
+     */
+    public synchronized void invalidate(long user) {
+        invalidations[stripe(user)]++;
+        CachedLog log = users.remove(user);
+        if (log != null) bytes -= log.bytes;
+    }
+
+    public synchronized int size() {
+        return users.size();
+    }
+
+    /**
+     * @return a rough estimate of the heap used by cached data, in bytes.
+     */
+    public synchronized long getMemoryEstimate() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the share of reads served from cache, in percent.
+     */
+    public long getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return (total == 0) ? 0 : hits * 100 / total;
+    }
+
+    private static int stripe(long user) {
+        int hash = Long.hashCode(user);
+        return (hash ^ (hash >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private CachedLog valid(long user) {
+        CachedLog log = users.get(user);
+        if (log != null && log.expiresAt < System.currentTimeMillis()) {
+            users.remove(user);
+            bytes -= log.bytes;
+            return null;
+        }
+        return log;
+    }
+
+    private CachedLog getOrCreate(long user) {
+        CachedLog log = valid(user);
+        if (log == null) {
+            log = new CachedLog(System.currentTimeMillis() + ttlMillis);
+            users.put(user, log);
+        }
+        return log;
+    }
+
+    private void add(CachedLog log, long size) {
+        log.bytes += size;
+        bytes += size;
+    }
+
+    private void record(boolean hit) {
+        if (hit) hits.increment();
+        else misses.increment();
+    }
+
+    private static long estimate(Entry entry) {
+        return ENTRY_OVERHEAD + 2L * (entry.getDrug().length() + entry.getUnits().length() + entry.getRoute().length());
+    }
+
+    /**
+     * Everything cached for one user.
+     */
+    private static class CachedLog {
+        private final long expiresAt;
+        private final Map<String, Long> counts = new HashMap<>();
+        private final Map<String, List<Entry>> pages = new HashMap<>();
+        private long bytes;
+
+        private CachedLog(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package drugsafe.data.logs;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BSON codec for legacy single-document logs, decoding each dose with the {@link EntryCodec}.
+ *
+ * @author TechnoVision
+ */
+public class LogCodec implements Codec<Log> {
+
+    private final EntryCodec entryCodec;
+
+    /**
+     * @param entryCodec the codec used for each dose.
+     */
+    public LogCodec(EntryCodec entryCodec) {
+        this.entryCodec = entryCodec;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Log log, EncoderContext context) {
+        writer.writeStartDocument();
+        writer.writeInt64("user", log.getUser());
+        if (log.getDoses() != null) {
+            writer.writeStartDocument("doses");
+            for (Map.Entry<String, List<Entry>> year : log.getDoses().entrySet()) {
+                writer.writeStartArray(year.getKey());
+                for (Entry entry : year.getValue()) {
+                    context.encodeWithChildContext(entryCodec, writer, entry);
+                }
+                writer.writeEndArray();
+            }
+            writer.writeEndDocument();
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Log decode(BsonReader reader, DecoderContext context) {
+        Log log = new Log();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (name.equals("user") && reader.getCurrentBsonType() == BsonType.INT64) {
+                log.setUser(reader.readInt64());
+            } else if (name.equals("doses") && reader.getCurrentBsonType() == BsonType.DOCUMENT) {
+                log.setDoses(readDoses(reader, context));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return log;
+    }
+
+    private Map<String, List<Entry>> readDoses(BsonReader reader, DecoderContext context) {
+        Map<String, List<Entry>> doses = new HashMap<>();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String year = reader.readName();
+            if (reader.getCurrentBsonType() != BsonType.ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            List<Entry> entries = new ArrayList<>();
+            reader.readStartArray();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                entries.add(entryCodec.decode(reader, context));
+            }
+            reader.readEndArray();
+            doses.put(year, entries);
+        }
+        reader.readEndDocument();
+        return doses;
+    }
+
+    @Override
+    public Class<Log> getEncoderClass() {
+        return Log.class;
+    }
+}
@@ -0,0 +1,24 @@
+package drugsafe.data.logs;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Provides the hand-written codecs for doses and legacy logs.
+ *
+ * @author TechnoVision
+ */
+public class LogCodecProvider implements CodecProvider {
+
+    private final EntryCodec entryCodec = new EntryCodec();
+    private final LogCodec logCodec = new LogCodec(entryCodec);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        if (clazz == Entry.class) return (Codec<T>) entryCodec;
+        if (clazz == Log.class) return (Codec<T>) logCodec;
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package drugsafe.data.logs;
+
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams logged doses into a gzip-compressed CSV or JSON file.
+ * Entries are written one at a time as they are read, so memory use doesn't depend on the size of the log.
+ *
+ * @author TechnoVision
+ */
+public class LogExporter {
+
+    /**
+     * Supported export file formats.
+     */
+    public enum Format {
+        CSV("csv"),
+        JSON("json");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private LogExporter() { }
+
+    /**
+     * Writes doses to a new temporary file. The caller is responsible for deleting it.
+     *
+     * @param entries the doses to export, usually a database cursor (which the caller must close).
+     * @param format the file format.
+     * @return the exported file and the number of doses in it.
+     * @throws IOException if the file could not be written.
+     */
+    public static Export export(@NotNull Iterator<Entry> entries, @NotNull Format format) throws IOException {
+        Path file = Files.createTempFile("drugsafe-export-", "." + format.extension + ".gz");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 8192), StandardCharsets.UTF_8))) {
+            long count = switch (format) {
+                case CSV -> writeCsv(entries, writer);
+                case JSON -> writeJson(entries, writer);
+            };
+            return new Export(file, count);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private static long writeCsv(Iterator<Entry> entries, Writer writer) throws IOException {
+        long count = 0;
+        writer.write("date,drug,dose,units,route\n");
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            writer.write(entry.getDate().toInstant().toString());
+            writer.write(',');
+            writer.write(csv(entry.getDrug()));
+            writer.write(',');
+            writer.write(Double.toString(entry.getDose()));
+            writer.write(',');
+            writer.write(csv(entry.getUnits()));
+            writer.write(',');
+            writer.write(csv(entry.getRoute()));
+            writer.write('\n');
+            count++;
+        }
+        return count;
+    }
+
+    private static long writeJson(Iterator<Entry> entries, Writer writer) throws IOException {
+        long count = 0;
+        JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            json.beginObject()
+                    .name("date").value(entry.getDate().toInstant().toString())
+                    .name("drug").value(entry.getDrug())
+                    .name("dose").value(entry.getDose())
+                    .name("units").value(entry.getUnits())
+                    .name("route").value(entry.getRoute())
+                    .endObject();
+            count++;
+        }
+        json.endArray();
+        json.flush();
+        return count;
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote, or line break.
+     * Fields that a spreadsheet would run as a formula are prefixed with a quote so they are shown as text.
+     */
+    static String csv(String value) {
+        if (value == null || value.isEmpty()) return "";
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') value = "'" + value;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * An exported file.
+     *
+     * @param file the temporary file holding the export.
+     * @param count the number of doses exported.
+     */
+    public record Export(Path file, long count) { }
+}
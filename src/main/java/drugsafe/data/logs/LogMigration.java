@@ -0,0 +1,154 @@
+package drugsafe.data.logs;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.types.ObjectId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves legacy single-document logs into per-dose documents while the bot is running.
+ * A background sweep migrates every user, retrying with backoff until no legacy logs are left,
+ * and commands migrate a user on demand before touching their doses.
+ * Each migrated dose gets an id derived from its position in the old log, so re-running a migration is safe.
+ *
+ * @author TechnoVision
+ */
+public class LogMigration {
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    /** Delay before the first retry of a failed sweep, doubled after every failure up to the max */
+    private static final long RETRY_SECONDS = 30;
+    private static final long MAX_RETRY_SECONDS = 60 * 60;
+
+    private final MongoCollection<Log> logs;
+    private final MongoCollection<Entry> doses;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean complete;
+
+    /**
+     * @param logs the legacy collection with one document per user.
+     * @param doses the collection with one document per dose.
+     */
+    public LogMigration(@NotNull MongoCollection<Log> logs, @NotNull MongoCollection<Entry> doses) {
+        this.logs = logs;
+        this.doses = doses;
+    }
+
+    /**
+     * Starts migrating every legacy log in the background.
+     */
+    public void start() {
+        executor.execute(() -> sweep(RETRY_SECONDS));
+    }
+
+    /**
+     * Migrates every remaining legacy log, and schedules another sweep if any are left or it fails.
+     *
+     * @param retrySeconds the delay before the next sweep if this one doesn't finish.
+     */
+    private void sweep(long retrySeconds) {
+        try {
+            List<Long> users = logs.distinct("user", Long.class).into(new ArrayList<>());
+            for (long user : users) migrateUser(user);
+            complete = logs.countDocuments() == 0;
+            if (!users.isEmpty()) System.out.println("Migrated " + users.size() + " legacy dose logs.");
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not migrate legacy dose logs, retrying in " + retrySeconds + "s: " + e.getMessage());
+        }
+        if (!complete) {
+            executor.schedule(() -> sweep(Math.min(retrySeconds * 2, MAX_RETRY_SECONDS)), retrySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return true once every legacy log has been migrated.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Migrates a single user's legacy log if they still have one. Does nothing once the sweep has finished.
+     * Doses without a date are migrated at the start of their year. If any dose can't be migrated,
+     * the legacy log is kept so nothing is lost.
+     *
+     * @param user the ID of the user.
+     */
+    public synchronized void migrateUser(long user) {
+        if (complete) return;
+        Log log = logs.find(Filters.eq("user", user)).first();
+        if (log == null) return;
+
+        List<WriteModel<Entry>> writes = new ArrayList<>();
+        int skipped = 0;
+        if (log.getDoses() != null) {
+            for (Map.Entry<String, List<Entry>> year : log.getDoses().entrySet()) {
+                List<Entry> entries = year.getValue();
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry entry = entries.get(i);
+                    if (entry.getDate() == null) {
+                        Date start = startOfYear(year.getKey());
+                        if (start == null) {
+                            System.out.println("ERROR: Could not migrate dose " + i + " of " + year.getKey() + " for user " + user + ": no date");
+                            skipped++;
+                            continue;
+                        }
+                        entry.setDate(start);
+                    }
+                    entry.setId(legacyId(user, year.getKey(), i, entry));
+                    entry.setUser(user);
+                    writes.add(new ReplaceOneModel<>(Filters.eq("_id", entry.getId()), entry, UPSERT));
+                }
+            }
+        }
+        if (!writes.isEmpty()) doses.bulkWrite(writes, UNORDERED);
+        if (skipped == 0) logs.deleteOne(Filters.eq("user", user));
+    }
+
+    /**
+     * Gets the start of a legacy year key, or null if the key isn't a year.
+     */
+    private static @Nullable Date startOfYear(String year) {
+        try {
+            return Date.from(LocalDate.of(Integer.parseInt(year), 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds a stable id for a legacy dose, keeping the dose time as the id timestamp.
+     */
+    private static ObjectId legacyId(long user, String year, int index, Entry entry) {
+        byte[] key = (user + ":" + year + ":" + index).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocate(12);
+        bytes.putInt((int) (entry.getDate().getTime() / 1000));
+        bytes.putLong(UUID.nameUUIDFromBytes(key).getMostSignificantBits());
+        return new ObjectId(bytes.array());
+    }
+}
@@ -0,0 +1,95 @@
+package drugsafe.data.logs;
+
+import drugsafe.data.Database;
+import drugsafe.listeners.PageSource;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The pages of a user's log for one year, each read from the database only when it is shown.
+ * Only the dose count is read up front, so memory and decode time per page don't depend on the size of the log.
+ * Counts and pages are read through the {@link LogCache}.
+ *
+ * @author TechnoVision
+ */
+public class LogPages implements PageSource {
+
+    private final Database database;
+    private final LogCache cache;
+    private final User user;
+    private final String year;
+    private final long count;
+
+    /**
+     * Counts the user's doses for the year.
+     *
+     * @param database the database the doses are stored in.
+     * @param cache the cache of recently viewed logs.
+     * @param user the user whose log is being displayed.
+     * @param year the year to display logged doses for.
+     */
+    public LogPages(@NotNull Database database, @NotNull LogCache cache, @NotNull User user, @NotNull String year) {
+        this.database = database;
+        this.cache = cache;
+        this.user = user;
+        this.year = year;
+
+        Long cached = cache.getCount(user.getIdLong(), year);
+        if (cached != null) {
+            this.count = cached;
+        } else {
+            long stamp = cache.stamp(user.getIdLong());
+            this.count = database.doses.countDocuments(Database.yearFilter(user.getIdLong(), year));
+            if (count > 0) cache.putCount(user.getIdLong(), year, count, stamp);
+        }
+    }
+
+    /**
+     * @return the number of doses logged in the year.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Reads and renders one page, newest doses first.
+     *
+     * @param page the page number, starting at 0.
+     * @return the page embed.
+     */
+    @Override
+    public MessageEmbed getPage(int page) {
+        List<Entry> entries = cache.getPage(user.getIdLong(), year, page);
+        if (entries == null) {
+            long stamp = cache.stamp(user.getIdLong());
+            entries = database.doses.find(Database.yearFilter(user.getIdLong(), year))
+                    .sort(Database.LOG_ORDER_NEWEST)
+                    .skip(page * Log.PAGE_SIZE)
+                    .limit(Log.PAGE_SIZE)
+                    .into(new ArrayList<>(Log.PAGE_SIZE));
+            cache.putPage(user.getIdLong(), year, page, entries, stamp);
+        }
+        return Log.getPage(user, year, entries, (int) count - page * Log.PAGE_SIZE);
+    }
+
+    /**
+     * Reads and renders one page on the database pool.
+     *
+     * @param page the page number, starting at 0.
+     * @return a future completed with the page embed.
+     */
+    @Override
+    public CompletableFuture<MessageEmbed> getPageAsync(int page) {
+        return database.supplyAsync(() -> getPage(page));
+    }
+
+    @Override
+    public int getPageCount() {
+        return (int) Math.max(1, (count + Log.PAGE_SIZE - 1) / Log.PAGE_SIZE);
+    }
+}
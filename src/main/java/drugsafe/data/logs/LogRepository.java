@@ -0,0 +1,337 @@
+package drugsafe.data.logs;
+
+import com.mongodb.client.MongoCursor;
+import drugsafe.data.Database;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Asynchronous access to users' dose logs.
+ * Every method runs on the database pool and returns a future, keeping the write-behind queue,
+ * the log cache, the stats aggregates, and legacy log migration consistent with each other.
+ *
+ * @author TechnoVision
+ */
+public class LogRepository {
+
+    /**
+     * How much a user has logged, used to pick an error message.
+     */
+    public enum Status { NO_DOSES, NO_DOSES_IN_YEAR, HAS_DOSES }
+
+    /** Number of doses fetched per cursor batch when exporting */
+    public static final int EXPORT_BATCH_SIZE = 500;
+
+    /** Number of locks users are spread over for stats changes (a power of two) */
+    private static final int STATS_LOCK_STRIPES = 256;
+
+    private final Database database;
+    private final @Nullable DoseWriter writer;
+    private final LogCache cache;
+    private final LogStats stats;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Users with a dose change whose counter update hasn't been applied yet.
+     * A user's stats are only rebuilt while they have none, so an update is never counted twice or lost.
+     */
+    private final Map<Long, Integer> statsChanges = new ConcurrentHashMap<>();
+    private final Object[] statsLocks = new Object[STATS_LOCK_STRIPES];
+
+    /**
+     * @param database the database doses are stored in.
+     * @param writer the write-behind queue, or null to write doses directly.
+     * @param cache the cache of recently viewed logs.
+     */
+    public LogRepository(@NotNull Database database, @Nullable DoseWriter writer, @NotNull LogCache cache) {
+        this.database = database;
+        this.writer = writer;
+        this.cache = cache;
+        this.stats = new LogStats(database.doses, database.stats);
+        for (int i = 0; i < statsLocks.length; i++) statsLocks[i] = new Object();
+    }
+
+    /**
+     * Stores a new dose. The user's stats are updated afterwards in a separate task on the database pool,
+     * so the future doesn't wait on them.
+     *
+     * @param entry the dose, with its id and user set.
+     * @return a future completed once the dose is journaled or written.
+     */
+    public CompletableFuture<Void> add(@NotNull Entry entry) {
+        long user = entry.getUser();
+        CompletableFuture<Void> added = database.supplyAsync(() -> {
+            beginStatsChange(user);
+            try {
+                if (writer != null) {
+                    try {
+                        writer.submit(entry);
+                    } catch (IOException e) {
+                        database.doses.insertOne(entry);
+                    }
+                } else {
+                    database.doses.insertOne(entry);
+                }
+            } catch (RuntimeException e) {
+                endStatsChange(user, () -> true);
+                throw e;
+            }
+            cache.invalidate(user);
+            return null;
+        });
+        added.thenRun(() -> database.supplyAsync(() -> {
+            if (!endStatsChange(user, () -> stats.add(entry))) rebuildStats(user);
+            return null;
+        }).exceptionally(error -> {
+            // The pool is saturated, the next rebuild corrects the counters
+            endStatsChange(user, () -> true);
+            return null;
+        }));
+        return added;
+    }
+
+    /**
+     * Counts a user's doses for a year and renders the first page of their log.
+     *
+     * @param user the user whose log is being displayed.
+     * @param year the year to display logged doses for.
+     * @return a future completed with the log view.
+     */
+    public CompletableFuture<View> view(@NotNull User user, @NotNull String year) {
+        return view(user, year, 0);
+    }
+
+    /**
+     * Counts a user's doses for a year and renders one page of their log.
+     *
+     * @param user the user whose log is being displayed.
+     * @param year the year to display logged doses for.
+     * @param page the page to render, starting at 0. Pages past the end render the last page.
+     * @return a future completed with the log view.
+     */
+    public CompletableFuture<View> view(@NotNull User user, @NotNull String year, int page) {
+        return database.supplyAsync(() -> {
+            prepare(user.getIdLong());
+            LogPages pages = new LogPages(database, cache, user, year);
+            if (pages.getCount() == 0) return new View(pages, null, 0, hasDoses(user.getIdLong()));
+            int index = Math.max(0, Math.min(page, pages.getPageCount() - 1));
+            return new View(pages, pages.getPage(index), index, true);
+        });
+    }
+
+    /**
+     * Removes the dose at a position in a user's year.
+     *
+     * @param user the ID of the user.
+     * @param year the year to remove the dose from.
+     * @param index the position of the dose, starting at 0.
+     * @return a future completed with the removed dose, or null if there is no dose at that position.
+     */
+    public CompletableFuture<Entry> remove(long user, @NotNull String year, int index) {
+        return database.supplyAsync(() -> {
+            prepare(user);
+            beginStatsChange(user);
+            Entry removed = null;
+            try {
+                removed = database.removeDose(user, year, index);
+                if (removed != null) cache.invalidate(user);
+            } finally {
+                Entry entry = removed;
+                endStatsChange(user, () -> {
+                    if (entry != null) stats.remove(entry);
+                    return true;
+                });
+            }
+            return removed;
+        });
+    }
+
+    /**
+     * Removes every dose a user logged, or only those in one year.
+     *
+     * @param user the ID of the user.
+     * @param year the year to reset, or null to reset the entire log.
+     * @return a future completed once the doses are removed.
+     */
+    public CompletableFuture<Void> reset(long user, @Nullable String year) {
+        return database.supplyAsync(() -> {
+            prepare(user);
+            beginStatsChange(user);
+            try {
+                database.doses.deleteMany((year != null) ? Database.yearFilter(user, year) : Database.userFilter(user));
+                cache.invalidate(user);
+            } finally {
+                endStatsChange(user, () -> {
+                    if (year == null) stats.reset(user);
+                    return year == null;
+                });
+            }
+            if (year != null) rebuildStats(user);
+            return null;
+        });
+    }
+
+    /**
+     * Gets a user's dose stats from their pre-aggregated counters, building them first if needed.
+     *
+     * @param user the ID of the user.
+     * @return a future completed with the stats document, or null if the user has not logged any doses.
+     */
+    public CompletableFuture<Document> stats(long user) {
+        return database.supplyAsync(() -> {
+            Document aggregate = stats.get(user);
+            if (aggregate != null) return aggregate;
+            prepare(user);
+            if (!hasDoses(user)) return null;
+            aggregate = rebuildStats(user);
+            return (aggregate != null) ? aggregate : stats.compute(user);
+        });
+    }
+
+    /**
+     * Streams a user's doses, oldest first, into a compressed file.
+     *
+     * @param user the ID of the user.
+     * @param year the year to export, or null to export the entire log.
+     * @param format the file format.
+     * @return a future completed with the export (containing zero doses if there is nothing to export).
+     */
+    public CompletableFuture<LogExporter.Export> export(long user, @Nullable String year, @NotNull LogExporter.Format format) {
+        return database.supplyAsync(() -> {
+            prepare(user);
+            try (MongoCursor<Entry> cursor = database.doses.find((year != null) ? Database.yearFilter(user, year) : Database.userFilter(user))
+                    .sort(Database.LOG_ORDER)
+                    .batchSize(EXPORT_BATCH_SIZE)
+                    .iterator()) {
+                return LogExporter.export(cursor, format);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Schedules periodic rebuilds of every user's stats from their raw doses on the stats thread.
+     * Users with a change in progress are skipped until the next rebuild.
+     *
+     * @param interval the time between rebuilds.
+     */
+    public void scheduleStatsRebuild(@NotNull Duration interval) {
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                for (long user : stats.users()) rebuildStats(user);
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not rebuild dose stats: " + e.getMessage());
+            }
+        }, interval.toMinutes(), interval.toMinutes(), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Checks whether a user has logged any doses overall and in a year.
+     *
+     * @param user the ID of the user.
+     * @param year the year to check.
+     * @return a future completed with the status.
+     */
+    public CompletableFuture<Status> status(long user, @NotNull String year) {
+        return database.supplyAsync(() -> {
+            if (!hasDoses(user)) return Status.NO_DOSES;
+            if (database.doses.find(Database.yearFilter(user, year)).first() == null) return Status.NO_DOSES_IN_YEAR;
+            return Status.HAS_DOSES;
+        });
+    }
+
+    private boolean hasDoses(long user) {
+        return database.doses.find(Database.userFilter(user)).first() != null;
+    }
+
+    /**
+     * Rebuilds a user's stats once their legacy log is migrated and every queued dose has been written.
+     * Skipped while the user has a change whose counter update is still to come, which would count it twice.
+     *
+     * @return the new aggregate, or null if the rebuild was skipped or failed.
+     */
+    private @Nullable Document rebuildStats(long user) {
+        synchronized (statsLock(user)) {
+            if (statsChanges.containsKey(user)) return null;
+            try {
+                prepare(user);
+                return stats.rebuild(user);
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not rebuild dose stats for " + user + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Marks the start of a change to a user's doses, before the doses are touched.
+     */
+    private void beginStatsChange(long user) {
+        synchronized (statsLock(user)) {
+            statsChanges.merge(user, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Applies the counter update for a change to a user's doses and marks the change as done.
+     * The update never fails the operation that caused it, counters that miss one are corrected by the next rebuild.
+     *
+     * @param update the counter update, returning false if the user's stats need a rebuild.
+     * @return the result of the update, true if it failed.
+     */
+    private boolean endStatsChange(long user, BooleanSupplier update) {
+        synchronized (statsLock(user)) {
+            try {
+                return update.getAsBoolean();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not update dose stats for " + user + ": " + e.getMessage());
+                return true;
+            } finally {
+                statsChanges.computeIfPresent(user, (id, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    private Object statsLock(long user) {
+        int hash = Long.hashCode(user);
+        return statsLocks[(hash ^ (hash >>> 16)) & (STATS_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Makes sure a user's doses are all in the doses collection before reading or changing them,
+     * migrating a legacy log and writing any doses still queued.
+     */
+    private void prepare(long user) {
+        database.migration.migrateUser(user);
+        if (writer != null) writer.flushUser(user);
+    }
+
+    /**
+     * A user's log for one year.
+     *
+     * @param pages every page of the log (read lazily).
+     * @param page the rendered page, or null if there are no doses in the year.
+     * @param index the number of the rendered page, starting at 0.
+     * @param hasDoses true if the user has logged doses in any year.
+     */
+    public record View(LogPages pages, @Nullable MessageEmbed page, int index, boolean hasDoses) { }
+}
@@ -0,0 +1,289 @@
+package drugsafe.data.logs;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.UpdateResult;
+import drugsafe.data.Database;
+import drugsafe.util.embeds.EmbedColor;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.DecimalFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Pre-aggregated dose statistics, one small document per user.
+ * Counters are kept up to date with $inc as doses are added and removed,
+ * and can be recomputed from the raw doses with an aggregation pipeline.
+ * <p>
+ * Layout: {@code substances.<drug>.<units>} and {@code routes.<route>.<units>} hold a count and a dose total,
+ * {@code months.<yyyy-MM>} holds a count.
+ *
+ * @author TechnoVision
+ */
+public class LogStats {
+
+    /** Number of substances and months listed in the stats embed */
+    public static final int MAX_ROWS = 10;
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final MongoCollection<Entry> doses;
+    private final MongoCollection<Document> stats;
+
+    /**
+     * @param doses the collection of raw doses.
+     * @param stats the collection of per-user aggregates.
+     */
+    public LogStats(@NotNull MongoCollection<Entry> doses, @NotNull MongoCollection<Document> stats) {
+        this.doses = doses;
+        this.stats = stats;
+    }
+
+    /**
+     * Adds a dose to a user's counters.
+     *
+     * @param entry the dose that was logged.
+     * @return false if the user has no aggregate yet and it needs a rebuild.
+     */
+    public boolean add(@NotNull Entry entry) {
+        return increment(entry, 1).getMatchedCount() > 0;
+    }
+
+    /**
+     * Removes a dose from a user's counters.
+     *
+     * @param entry the dose that was removed.
+     */
+    public void remove(@NotNull Entry entry) {
+        increment(entry, -1);
+    }
+
+    /**
+     * Drops a user's aggregate entirely.
+     *
+     * @param user the ID of the user.
+     */
+    public void reset(long user) {
+        stats.deleteOne(Database.userFilter(user));
+    }
+
+    /**
+     * Reads a user's aggregate, one small document fetch.
+     *
+     * @param user the ID of the user.
+     * @return the aggregate, or null if it hasn't been built.
+     */
+    public @Nullable Document get(long user) {
+        return stats.find(Database.userFilter(user)).first();
+    }
+
+    private UpdateResult increment(Entry entry, int sign) {
+        String units = key(entry.getUnits());
+        String substance = "substances." + key(entry.getDrug()) + "." + units;
+        String route = "routes." + key(entry.getRoute()) + "." + units;
+        String month = "months." + MONTH_FORMAT.format(entry.getDate().toInstant().atZone(ZoneId.systemDefault()));
+        Bson update = Updates.combine(
+                Updates.inc("total", sign),
+                Updates.inc(substance + ".count", sign),
+                Updates.inc(substance + ".total", sign * entry.getDose()),
+                Updates.inc(route + ".count", sign),
+                Updates.inc(route + ".total", sign * entry.getDose()),
+                Updates.inc(month, sign)
+        );
+        return stats.updateOne(Database.userFilter(entry.getUser()), update);
+    }
+
+    /**
+     * Recomputes a user's aggregate from their raw doses and stores it.
+     *
+     * @param user the ID of the user.
+     * @return the new aggregate.
+     */
+    public Document rebuild(long user) {
+        Document aggregate = compute(user);
+        stats.replaceOne(Database.userFilter(user), aggregate, UPSERT);
+        return aggregate;
+    }
+
+    /**
+     * Computes a user's aggregate from their raw doses with a single aggregation, without storing it.
+     *
+     * @param user the ID of the user.
+     * @return the aggregate.
+     */
+    public Document compute(long user) {
+        Document zone = new Document("format", "%Y-%m").append("date", "$date").append("timezone", ZoneId.systemDefault().getId());
+        List<Bson> pipeline = Arrays.asList(
+                Aggregates.match(Database.userFilter(user)),
+                Aggregates.facet(
+                        new Facet("substances", Aggregates.group(
+                                new Document("key", "$drug").append("units", "$units"),
+                                Accumulators.sum("count", 1), Accumulators.sum("total", "$dose"))),
+                        new Facet("routes", Aggregates.group(
+                                new Document("key", "$route").append("units", "$units"),
+                                Accumulators.sum("count", 1), Accumulators.sum("total", "$dose"))),
+                        new Facet("months", Aggregates.group(
+                                new Document("$dateToString", zone),
+                                Accumulators.sum("count", 1)))
+                )
+        );
+        Document result = doses.aggregate(pipeline, Document.class).first();
+
+        Document aggregate = new Document("user", user);
+        Document substances = new Document();
+        Document routes = new Document();
+        Document months = new Document();
+        int total = 0;
+        if (result != null) {
+            for (Document group : result.getList("substances", Document.class)) {
+                total += nest(substances, group, null);
+            }
+            for (Document group : result.getList("routes", Document.class)) {
+                nest(routes, group, EntryCodec.ROUTES);
+            }
+            for (Document group : result.getList("months", Document.class)) {
+                months.append(group.getString("_id"), group.getInteger("count"));
+            }
+        }
+        aggregate.append("total", total).append("substances", substances).append("routes", routes).append("months", months);
+        return aggregate;
+    }
+
+    /**
+     * @return the ID of every user with logged doses.
+     */
+    public List<Long> users() {
+        return doses.distinct("user", Long.class).into(new ArrayList<>());
+    }
+
+    /**
+     * Adds an aggregation group to a counter map, merging groups whose units or route
+     * were stored both as a code and as a string.
+     */
+    private static int nest(Document parent, Document group, List<String> keyCodes) {
+        Document id = group.get("_id", Document.class);
+        int count = group.getInteger("count");
+        double total = group.get("total", Number.class).doubleValue();
+        String name = key(EntryCodec.nameOf(id.get("key"), keyCodes));
+        String units = key(EntryCodec.nameOf(id.get("units"), EntryCodec.UNITS));
+
+        Document byUnits = parent.get(name, Document.class);
+        if (byUnits == null) {
+            byUnits = new Document();
+            parent.append(name, byUnits);
+        }
+        Document counter = byUnits.get(units, Document.class);
+        if (counter != null) {
+            count += counter.getInteger("count");
+            total += counter.getDouble("total");
+        }
+        byUnits.append(units, new Document("count", count).append("total", total));
+        return group.getInteger("count");
+    }
+
+    /**
+     * Escapes a name for use as a field name ('.' and a leading '$' are not allowed).
+     */
+    private static String key(String name) {
+        String key = name.trim().replace('.', '\uFF0E');
+        return key.startsWith("$") ? '\uFF04' + key.substring(1) : key;
+    }
+
+    private static String unkey(String key) {
+        return key.replace('\uFF0E', '.').replace('\uFF04', '$');
+    }
+
+    /**
+     * Creates an embed to display a user's stats.
+     *
+     * @param user the user whose stats are being displayed.
+     * @param aggregate the user's aggregate document.
+     * @return a MessageEmbed with stats data.
+     */
+    public static MessageEmbed getEmbed(User user, Document aggregate) {
+        DecimalFormat numberFormat = new DecimalFormat("#,###.##");
+        EmbedBuilder embed = new EmbedBuilder()
+                .setColor(EmbedColor.DEFAULT.color)
+                .setTitle(":bar_chart: Dose Stats")
+                .setDescription("**Total doses:** " + numberFormat.format(aggregate.get("total", Number.class)))
+                .setFooter(user.getName(), user.getEffectiveAvatarUrl());
+
+        // Substances, most logged first
+        List<Map.Entry<String, Document>> substances = sorted(aggregate.get("substances", Document.class));
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Document> substance : substances.subList(0, Math.min(MAX_ROWS, substances.size()))) {
+            StringJoiner totals = new StringJoiner(", ");
+            int count = 0;
+            for (Map.Entry<String, Object> units : substance.getValue().entrySet()) {
+                Document counter = (Document) units.getValue();
+                if (counter.get("count", Number.class).intValue() <= 0) continue;
+                count += counter.get("count", Number.class).intValue();
+                totals.add(numberFormat.format(counter.get("total", Number.class)) + unkey(units.getKey()));
+            }
+            if (count <= 0) continue;
+            text.append("**").append(unkey(substance.getKey())).append("** \u2022 ").append(count).append("x (").append(totals).append(")\n");
+        }
+        if (!text.isEmpty()) embed.addField("Substances", text.toString(), false);
+
+        // Average dose per route
+        text = new StringBuilder();
+        for (Map.Entry<String, Document> route : sorted(aggregate.get("routes", Document.class))) {
+            for (Map.Entry<String, Object> units : route.getValue().entrySet()) {
+                Document counter = (Document) units.getValue();
+                int count = counter.get("count", Number.class).intValue();
+                if (count <= 0) continue;
+                double average = counter.get("total", Number.class).doubleValue() / count;
+                String name = unkey(route.getKey());
+                text.append(Entry.routeEmojis.getOrDefault(name, ":question:")).append(" ")
+                        .append(name.substring(0, 1).toUpperCase()).append(name.substring(1)).append(": ")
+                        .append(numberFormat.format(average)).append(unkey(units.getKey())).append(" avg\n");
+            }
+        }
+        if (!text.isEmpty()) embed.addField("Average Dose by Route", text.toString(), true);
+
+        // Most recent months
+        Document months = aggregate.get("months", Document.class);
+        if (months != null) {
+            text = new StringBuilder();
+            List<String> keys = new ArrayList<>(months.keySet());
+            keys.sort(Comparator.reverseOrder());
+            int rows = 0;
+            for (String month : keys) {
+                int count = months.get(month, Number.class).intValue();
+                if (count <= 0) continue;
+                text.append("`").append(month).append("` ").append(count).append("\n");
+                if (++rows == MAX_ROWS) break;
+            }
+            if (!text.isEmpty()) embed.addField("Doses per Month", text.toString(), true);
+        }
+        return embed.build();
+    }
+
+    /**
+     * Sorts a counter map by total count, highest first.
+     */
+    private static List<Map.Entry<String, Document>> sorted(@Nullable Document counters) {
+        List<Map.Entry<String, Document>> entries = new ArrayList<>();
+        if (counters == null) return entries;
+        for (Map.Entry<String, Object> entry : counters.entrySet()) {
+            entries.add(Map.entry(entry.getKey(), (Document) entry.getValue()));
+        }
+        entries.sort(Comparator.comparingInt((Map.Entry<String, Document> entry) -> count(entry.getValue())).reversed());
+        return entries;
+    }
+
+    private static int count(Document byUnits) {
+        int count = 0;
+        for (Object counter : byUnits.values()) count += ((Document) counter).get("count", Number.class).intValue();
+        return count;
+    }
+}
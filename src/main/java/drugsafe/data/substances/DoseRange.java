@@ -0,0 +1,32 @@
+package drugsafe.data.substances;
+
+import java.text.DecimalFormat;
+
+/**
+ * Immutable dose range for a single dosage tier (threshold, light, common, strong, heavy).
+ * Single-value tiers such as threshold and heavy have an equal min and max.
+ *
+ * @author TechnoVision
+ */
+public record DoseRange(double min, double max) {
+
+    /**
+     * Formats this range for display.
+     *
+     * @param format the number format to use.
+     * @param units the dose units, appended without a space (e.g. "mg").
+     * @return either "min - max[units]" or "value[units]" for single values.
+     */
+    public String format(DecimalFormat format, String units) {
+        if (min == max) return format.format(min) + units;
+        return format.format(min) + " - " + format.format(max) + units;
+    }
+
+    /**
+     * @param dose a dose in the same units as this range.
+     * @return true if the dose is within this range (inclusive).
+     */
+    public boolean contains(double dose) {
+        return dose >= min && dose <= max;
+    }
+}
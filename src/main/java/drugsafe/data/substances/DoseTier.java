@@ -0,0 +1,90 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Dosage tiers used by PsychonautWiki, ordered from weakest to strongest.
+ *
+ * @author TechnoVision
+ */
+public enum DoseTier {
+
+    BELOW_THRESHOLD(":white_circle:", "Below threshold"),
+    THRESHOLD(":green_circle:", "Threshold"),
+    LIGHT(":green_circle:", "Light"),
+    COMMON(":yellow_circle:", "Common"),
+    STRONG(":orange_circle:", "Strong"),
+    HEAVY(":red_circle:", "Heavy");
+
+    public final String emoji;
+    public final String label;
+
+    DoseTier(String emoji, String label) {
+        this.emoji = emoji;
+        this.label = label;
+    }
+
+    /**
+     * @return true if doses in this tier should come with a warning.
+     */
+    public boolean isWarning() {
+        return compareTo(HEAVY) >= 0;
+    }
+
+    /**
+     * Classifies a dose against a substance's dosage ranges for a route.
+     *
+     * @param substance the substance the dose was taken of.
+     * @param route the route of administration (e.g. "oral").
+     * @param dose the amount taken.
+     * @param units the units of the amount taken.
+     * @return the dose tier, or null if there is no data for this route or the units can't be converted.
+     */
+    public static @Nullable DoseTier classify(@NotNull Substance substance, @NotNull String route, double dose, @NotNull String units) {
+        Roa roa = substance.getRoa(route);
+        if (roa == null || roa.dose() == null || roa.dose().units() == null) return null;
+        Roa.Doses doses = roa.dose();
+
+        double amount = convert(dose, units, doses.units());
+        if (Double.isNaN(amount)) return null;
+
+        if (doses.heavy() != null && amount >= doses.heavy().min()) return HEAVY;
+        if (doses.strong() != null && amount >= doses.strong().min()) return STRONG;
+        if (doses.common() != null && amount >= doses.common().min()) return COMMON;
+        if (doses.light() != null && amount >= doses.light().min()) return LIGHT;
+        if (doses.threshold() != null && amount >= doses.threshold().min()) return THRESHOLD;
+        if (doses.threshold() != null || doses.light() != null) return BELOW_THRESHOLD;
+        return null;
+    }
+
+    /**
+     * Converts an amount between units. Mass units convert freely, other units must match exactly.
+     *
+     * @param amount the amount to convert.
+     * @param from the units of the amount.
+     * @param to the target units.
+     * @return the converted amount, or NaN if the units are not compatible.
+     */
+    public static double convert(double amount, @NotNull String from, @NotNull String to) {
+        double fromScale = massScale(from);
+        double toScale = massScale(to);
+        if (!Double.isNaN(fromScale) && !Double.isNaN(toScale)) return amount * fromScale / toScale;
+        return from.equalsIgnoreCase(to) ? amount : Double.NaN;
+    }
+
+    /**
+     * @return the number of micrograms in one of the given unit, or NaN if it is not a mass unit.
+     */
+    private static double massScale(String units) {
+        return switch (units.trim().toLowerCase(Locale.ROOT)) {
+            // Micro sign (U+00B5) and Greek small mu (U+03BC) are both used for micrograms
+            case "\u00b5g", "\u03bcg", "ug", "mcg" -> 1;
+            case "mg" -> 1_000;
+            case "g" -> 1_000_000;
+            default -> Double.NaN;
+        };
+    }
+}
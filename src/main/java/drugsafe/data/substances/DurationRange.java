@@ -0,0 +1,21 @@
+package drugsafe.data.substances;
+
+import java.text.DecimalFormat;
+
+/**
+ * Immutable time range for a single duration phase (onset, comeup, peak, ...).
+ *
+ * @author TechnoVision
+ */
+public record DurationRange(double min, double max, String units) {
+
+    /**
+     * Formats this range for display.
+     *
+     * @param format the number format to use.
+     * @return the range as "min - max units".
+     */
+    public String format(DecimalFormat format) {
+        return format.format(min) + " - " + format.format(max) + " " + units;
+    }
+}
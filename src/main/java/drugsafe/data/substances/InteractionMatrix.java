@@ -0,0 +1,164 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Immutable dense matrix of interaction levels between every pair of substances.
+ * Built once from PsychonautWiki interaction lists so any pair can be checked in O(1) without a network call.
+ *
+ * @author TechnoVision
+ */
+public class InteractionMatrix {
+
+    /**
+     * Interaction risk levels, ordered from least to most severe.
+     */
+    public enum Level {
+        NONE(":white_check_mark:", "No known interaction"),
+        UNCERTAIN(":grey_question:", "Uncertain"),
+        UNSAFE(":warning:", "Unsafe"),
+        DANGEROUS(":no_entry:", "Dangerous");
+
+        public final String emoji;
+        public final String label;
+
+        Level(String emoji, String label) {
+            this.emoji = emoji;
+            this.label = label;
+        }
+    }
+
+    public static final InteractionMatrix EMPTY = new InteractionMatrix(Collections.emptyList());
+
+    private static final Level[] LEVELS = Level.values();
+
+    /** Canonical substance names by id */
+    private final String[] names;
+
+    /** Normalized names and aliases to substance id */
+    private final Map<String, Integer> ids;
+
+    /** Row-major n * n matrix of level ordinals */
+    private final byte[] levels;
+
+    /**
+     * Builds a matrix from substances with their interaction lists.
+     * Interactions listed by either side are applied to both, keeping the most severe level.
+     * An interaction may name a substance, an alias, or a whole class (e.g. "MAOIs").
+     *
+     * @param substances the substances to index.
+     */
+    public InteractionMatrix(@NotNull List<Substance> substances) {
+        int n = substances.size();
+        this.names = new String[n];
+        this.ids = new HashMap<>(n * 4);
+        this.levels = new byte[n * n];
+
+        // Assign ids to names first so they win over aliases and classes
+        Map<String, List<Integer>> classes = new HashMap<>();
+        for (int id = 0; id < n; id++) {
+            Substance substance = substances.get(id);
+            names[id] = substance.name();
+            ids.put(SubstanceCache.normalize(substance.name()), id);
+            for (String group : substance.chemicalClass()) classes.computeIfAbsent(groupKey(group), k -> new ArrayList<>()).add(id);
+            for (String group : substance.psychoactiveClass()) classes.computeIfAbsent(groupKey(group), k -> new ArrayList<>()).add(id);
+        }
+        for (int id = 0; id < n; id++) {
+            for (String alias : substances.get(id).commonNames()) ids.putIfAbsent(SubstanceCache.normalize(alias), id);
+        }
+
+        // Fill the matrix from each substance's interaction lists
+        for (int id = 0; id < n; id++) {
+            Substance substance = substances.get(id);
+            apply(id, substance.uncertainInteractions(), Level.UNCERTAIN, classes);
+            apply(id, substance.unsafeInteractions(), Level.UNSAFE, classes);
+            apply(id, substance.dangerousInteractions(), Level.DANGEROUS, classes);
+        }
+    }
+
+    private void apply(int id, List<String> interactions, Level level, Map<String, List<Integer>> classes) {
+        for (String interaction : interactions) {
+            Integer other = ids.get(SubstanceCache.normalize(interaction));
+            if (other != null) {
+                set(id, other, level);
+                continue;
+            }
+            List<Integer> members = classes.get(groupKey(interaction));
+            if (members != null) {
+                for (int member : members) set(id, member, level);
+            }
+        }
+    }
+
+    private void set(int a, int b, Level level) {
+        int n = names.length;
+        byte value = (byte) level.ordinal();
+        if (levels[a * n + b] < value) levels[a * n + b] = value;
+        if (levels[b * n + a] < value) levels[b * n + a] = value;
+    }
+
+    /**
+     * Normalizes a class name so that singular and plural forms match ("MAOI" and "MAOIs").
+     */
+    private static String groupKey(String group) {
+        String key = SubstanceCache.normalize(group);
+        return key.endsWith("s") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    /**
+     * Resolves a substance name or alias to its id.
+     *
+     * @param name the name entered by a user.
+     * @return the substance id, or -1 if the substance is unknown.
+     */
+    public int idOf(@NotNull String name) {
+        Integer id = ids.get(SubstanceCache.normalize(name));
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * @param id a substance id.
+     * @return the canonical name of the substance.
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the interaction level between two substances.
+     *
+     * @param a the id of the first substance.
+     * @param b the id of the second substance.
+     * @return the most severe known interaction level.
+     */
+    public Level level(int a, int b) {
+        return LEVELS[levels[a * names.length + b]];
+    }
+
+    /**
+     * Checks every pair in a set of substances.
+     *
+     * @param ids the ids of the substances, without duplicates.
+     * @return each pair and its interaction level, in input order.
+     */
+    public List<Pair> check(int... ids) {
+        List<Pair> pairs = new ArrayList<>(ids.length * (ids.length - 1) / 2);
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i + 1; j < ids.length; j++) {
+                pairs.add(new Pair(ids[i], ids[j], level(ids[i], ids[j])));
+            }
+        }
+        return pairs;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * The interaction level between two substances.
+     */
+    public record Pair(int a, int b, Level level) { }
+}
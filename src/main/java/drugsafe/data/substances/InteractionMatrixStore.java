@@ -0,0 +1,76 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current substance interaction matrix and rebuilds it in the background.
+ *
+ * @author TechnoVision
+ */
+public class InteractionMatrixStore {
+
+    private final PsychonautWiki api;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interaction-matrix");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile InteractionMatrix current = InteractionMatrix.EMPTY;
+
+    /**
+     * @param api the client used to pull interaction data.
+     */
+    public InteractionMatrixStore(@NotNull PsychonautWiki api) {
+        this.api = api;
+    }
+
+    /**
+     * @return the current matrix (empty until the first refresh completes).
+     */
+    public @NotNull InteractionMatrix get() {
+        return current;
+    }
+
+    /**
+     * Fetches interaction lists for every substance and swaps in a new matrix.
+     *
+     * @throws IOException if the interaction data could not be fetched.
+     */
+    public void refresh() throws IOException {
+        current = new InteractionMatrix(api.fetchAll(SubstanceQuery.INTERACTIONS_ALL));
+    }
+
+    /**
+     * Refreshes once in the background, without scheduling further refreshes.
+     */
+    public void load() {
+        executor.execute(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not refresh interaction matrix: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Schedules periodic background refreshes, starting immediately.
+     *
+     * @param interval the time between refreshes.
+     */
+    public void scheduleRefresh(@NotNull Duration interval) {
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not refresh interaction matrix: " + e.getMessage());
+            }
+        }, 0, interval.toMinutes(), TimeUnit.MINUTES);
+    }
+}
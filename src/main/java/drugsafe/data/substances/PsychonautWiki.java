@@ -0,0 +1,168 @@
+package drugsafe.data.substances;
+
+import drugsafe.util.CircuitBreaker;
+import drugsafe.util.Metrics;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Client for the PsychonautWiki GraphQL API.
+ * Every request has explicit timeouts, runs behind a concurrency bulkhead,
+ * and is protected by a circuit breaker that fails fast while the API is unhealthy.
+ *
+ * @author TechnoVision
+ */
+public class PsychonautWiki {
+
+    public static final String API_URL = "https://api.psychonautwiki.org/?";
+    public static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /** Upper bound on substances requested when pulling the full list */
+    public static final int MAX_SUBSTANCES = 2000;
+
+    private final String apiUrl;
+    private final OkHttpClient httpClient;
+    private final OkHttpClient bulkClient;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker breaker;
+
+    /**
+     * Creates a client with default timeouts and limits.
+     *
+     * @param apiUrl the GraphQL endpoint (can point to a local stub server).
+     */
+    public PsychonautWiki(@NotNull String apiUrl) {
+        this(apiUrl, Duration.ofSeconds(3), Duration.ofSeconds(7), 32, 5, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Creates a client.
+     *
+     * @param apiUrl the GraphQL endpoint (can point to a local stub server).
+     * @param connectTimeout the maximum time to establish a connection.
+     * @param readTimeout the maximum time to wait for response data.
+     * @param maxConcurrent the maximum number of single-substance requests in flight.
+     * @param failureThreshold consecutive failures before the circuit opens.
+     * @param openDuration how long the circuit stays open before a trial request.
+     */
+    public PsychonautWiki(@NotNull String apiUrl, Duration connectTimeout, Duration readTimeout,
+                          int maxConcurrent, int failureThreshold, Duration openDuration) {
+        this.apiUrl = apiUrl;
+        // OkHttp only runs 5 calls per host by default, queued calls would wait without a call timeout
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrent);
+        dispatcher.setMaxRequestsPerHost(maxConcurrent);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .callTimeout(connectTimeout.plus(readTimeout))
+                .build();
+        this.bulkClient = httpClient.newBuilder()
+                .readTimeout(Duration.ofMinutes(1))
+                .callTimeout(Duration.ofMinutes(2))
+                .build();
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.breaker = new CircuitBreaker("PsychonautWiki", failureThreshold, openDuration);
+
+        Metrics.register("psychonautwiki.breaker.open", () -> breaker.isOpen() ? 1 : 0);
+        Metrics.register("psychonautwiki.breaker.opened", breaker::getOpened);
+        Metrics.register("psychonautwiki.breaker.rejected", breaker::getRejected);
+        Metrics.register("psychonautwiki.bulkhead.available", bulkhead::availablePermits);
+    }
+
+    /**
+     * Runs a query for a single name without blocking.
+     * Fails with {@link CircuitBreaker.OpenException} while the API is unhealthy,
+     * or {@link RejectedExecutionException} if too many requests are already in flight.
+     *
+     * @param query a query from the catalog that takes a string variable.
+     * @param value the variable value, e.g. a substance name entered by a user.
+     * @return a future completed with the matching substances, best match first.
+     */
+    public CompletableFuture<List<Substance>> search(@NotNull SubstanceQuery query, @NotNull String value) {
+        if (!bulkhead.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many PsychonautWiki requests in flight"));
+        }
+        if (!breaker.allowRequest()) {
+            bulkhead.release();
+            return CompletableFuture.failedFuture(breaker.newOpenException());
+        }
+
+        CompletableFuture<List<Substance>> future = new CompletableFuture<>();
+        Request request = new Request.Builder().url(apiUrl).post(query.body(value)).build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+                    List<Substance> substances = SubstanceParser.parseResponse(response.body().charStream());
+                    breaker.recordSuccess();
+                    future.complete(substances);
+                } catch (Exception e) {
+                    breaker.recordFailure();
+                    future.completeExceptionally(e);
+                } finally {
+                    bulkhead.release();
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                // Error occurred during request (or timed out)
+                breaker.recordFailure();
+                bulkhead.release();
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fetches every substance with the fields projected by a query and parses them into the typed model.
+     * This is a blocking request and should only be run from a background thread.
+     *
+     * @param query a query from the catalog that takes a limit variable.
+     * @return every substance returned by the API.
+     * @throws IOException if the request fails or the response is malformed.
+     */
+    public List<Substance> fetchAll(@NotNull SubstanceQuery query) throws IOException {
+        return executeBulk(query, response -> SubstanceParser.parseResponse(response.body().charStream()));
+    }
+
+    /**
+     * @return true if the circuit is open and requests are failing fast.
+     */
+    public boolean isUnavailable() {
+        return breaker.isOpen();
+    }
+
+    private <T> T executeBulk(SubstanceQuery query, ResponseReader<T> reader) throws IOException {
+        if (!breaker.allowRequest()) throw new IOException(breaker.newOpenException());
+        Request request = new Request.Builder().url(apiUrl).post(query.body(MAX_SUBSTANCES)).build();
+        try (Response response = bulkClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+            T result = reader.read(response);
+            breaker.recordSuccess();
+            return result;
+        } catch (IOException e) {
+            breaker.recordFailure();
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw new IOException("Malformed substance list response", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Response response) throws IOException;
+    }
+}
@@ -0,0 +1,32 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable dosage and duration data for one route of administration.
+ *
+ * @author TechnoVision
+ */
+public record Roa(String name, @Nullable Doses dose, @Nullable Durations duration, @Nullable DoseRange bioavailability) {
+
+    /**
+     * Dosage tiers for a route, any of which may be missing.
+     */
+    public record Doses(@Nullable String units,
+                        @Nullable DoseRange threshold,
+                        @Nullable DoseRange light,
+                        @Nullable DoseRange common,
+                        @Nullable DoseRange strong,
+                        @Nullable DoseRange heavy) { }
+
+    /**
+     * Duration phases for a route, any of which may be missing.
+     */
+    public record Durations(@Nullable DurationRange onset,
+                            @Nullable DurationRange comeup,
+                            @Nullable DurationRange peak,
+                            @Nullable DurationRange offset,
+                            @Nullable DurationRange afterglow,
+                            @Nullable DurationRange total,
+                            @Nullable DurationRange duration) { }
+}
@@ -0,0 +1,82 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current offline substance snapshot and refreshes it in the background.
+ * A refreshed snapshot is written to disk and swapped in atomically, readers never see a partial file.
+ *
+ * @author TechnoVision
+ */
+public class SnapshotStore {
+
+    private final Path path;
+    private final PsychonautWiki api;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "substance-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile SubstanceSnapshot current;
+
+    /**
+     * Creates a snapshot store and maps the existing snapshot file (if any).
+     *
+     * @param path the snapshot file location.
+     * @param api the client used to pull fresh substance data.
+     */
+    public SnapshotStore(@NotNull Path path, @NotNull PsychonautWiki api) {
+        this.path = path;
+        this.api = api;
+        if (Files.exists(path)) {
+            try {
+                current = SubstanceSnapshot.open(path);
+                System.out.println("Loaded substance snapshot with " + current.size() + " substances.");
+            } catch (IOException e) {
+                System.out.println("ERROR: Could not load substance snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the current snapshot, or null if none has been loaded yet.
+     */
+    public @Nullable SubstanceSnapshot get() {
+        return current;
+    }
+
+    /**
+     * Pulls every substance from the API, rewrites the snapshot file, and swaps it in.
+     *
+     * @throws IOException if the substances could not be fetched or written.
+     */
+    public void refresh() throws IOException {
+        SubstanceSnapshot.write(path, api.fetchAll(SubstanceQuery.INFO_ALL));
+        current = SubstanceSnapshot.open(path);
+    }
+
+    /**
+     * Schedules periodic background refreshes. If no snapshot exists yet, the first refresh runs immediately.
+     *
+     * @param interval the time between refreshes.
+     */
+    public void scheduleRefresh(@NotNull Duration interval) {
+        long initialDelay = (current == null) ? 0 : interval.toMinutes();
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not refresh substance snapshot: " + e.getMessage());
+            }
+        }, initialDelay, interval.toMinutes(), TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,171 @@
+package drugsafe.data.substances;
+
+import drugsafe.util.embeds.EmbedColor;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable harm reduction data for a single PsychonautWiki substance.
+ *
+ * @author TechnoVision
+ */
+public record Substance(String name,
+                        String url,
+                        List<String> commonNames,
+                        List<String> chemicalClass,
+                        List<String> psychoactiveClass,
+                        List<String> effects,
+                        List<Roa> roas,
+                        @Nullable String addictionPotential,
+                        List<String> uncertainInteractions,
+                        List<String> unsafeInteractions,
+                        List<String> dangerousInteractions,
+                        @Nullable Tolerance tolerance,
+                        List<String> images) {
+
+    public static final String ICON = "https://cdn-icons-png.flaticon.com/512/4320/4320344.png";
+
+    /**
+     * Tolerance build-up and reset times, any of which may be missing.
+     */
+    public record Tolerance(@Nullable String full, @Nullable String half, @Nullable String zero) { }
+
+    /**
+     * Creates an embed to display harm reduction info for this substance.
+     *
+     * @return the finished info embed.
+     */
+    public MessageEmbed getEmbed() {
+        DecimalFormat format = new DecimalFormat("0.##");
+
+        // Build embed template
+        EmbedBuilder embed = new EmbedBuilder()
+                .setAuthor("Drug Information", null, ICON)
+                .setTitle(name, url)
+                .setColor(EmbedColor.DEFAULT.color);
+
+        // Add image as thumbnail (if it exists)
+        String image = getValidImage();
+        if (image != null) embed.setThumbnail(image);
+
+        // Add drug class data (if it exists)
+        StringBuilder drugClass = new StringBuilder();
+        if (!chemicalClass.isEmpty()) {
+            drugClass.append("**Chemical:** ").append(chemicalClass.get(0));
+        }
+        if (!psychoactiveClass.isEmpty()) {
+            drugClass.append("\n**Psychoactive:** ").append(psychoactiveClass.get(0));
+        }
+        if (!drugClass.isEmpty()) embed.addField(":telescope: __Class__", drugClass.toString(), true);
+
+        // Add addiction potential (if it exists)
+        if (addictionPotential != null) {
+            embed.addField(":warning: __Addiction Potential__", addictionPotential, false);
+        }
+
+        // Add ROA and duration data (if it exists)
+        try {
+            String routes = getRoutesData(format);
+            if (!routes.isEmpty()) embed.addField(":scales: __Dosages__", routes, true);
+
+            String duration = getDurationData(format);
+            if (!duration.isEmpty()) embed.addField(":clock2: __Duration__", duration, true);
+        } catch (IllegalArgumentException ignored) { }
+
+        // Add tolerance data (if it exists)
+        if (tolerance != null) {
+            StringBuilder toleranceText = new StringBuilder();
+            if (tolerance.full() != null) toleranceText.append("**Full:** ").append(tolerance.full());
+            if (tolerance.half() != null) toleranceText.append("\n**Half:** ").append(tolerance.half());
+            if (tolerance.zero() != null) toleranceText.append("\n**Zero:** ").append(tolerance.zero());
+            if (!toleranceText.isEmpty()) {
+                embed.addField(":chart_with_upwards_trend: __Tolerance__", toleranceText.toString(), false);
+            }
+        }
+
+        // Add important links
+        String links = "[PsychonautWiki]("+url+")"
+                    + " - [Effect Index](https://www.effectindex.com/)"
+                    + " - [Drug Combinations](https://wiki.tripsit.me/images/3/3a/Combo_2.png)";
+        embed.addField(":globe_with_meridians: __Links__", links, false);
+
+        // Add footer
+        embed.setFooter("Please use drugs responsibly", ICON);
+        embed.setTimestamp(new Date().toInstant());
+
+        return embed.build();
+    }
+
+    /**
+     * Finds the route of administration with a matching name.
+     *
+     * @param route the route name (case-insensitive).
+     * @return the matching route, or null if this substance has no data for it.
+     */
+    public @Nullable Roa getRoa(String route) {
+        for (Roa roa : roas) {
+            if (roa.name().equalsIgnoreCase(route)) return roa;
+        }
+        return null;
+    }
+
+    private String getRoutesData(DecimalFormat format) {
+        StringBuilder routes = new StringBuilder();
+        for (Roa route : roas) {
+            Roa.Doses doses = route.dose();
+            if (doses == null) continue;
+
+            String units = (doses.units() != null) ? doses.units() : "";
+            routes.append("__(").append(route.name()).append(")__\n");
+            appendDoseInfo(routes, format, "Threshold", doses.threshold(), units);
+            appendDoseInfo(routes, format, "Light", doses.light(), units);
+            appendDoseInfo(routes, format, "Common", doses.common(), units);
+            appendDoseInfo(routes, format, "Strong", doses.strong(), units);
+            appendDoseInfo(routes, format, "Heavy", doses.heavy(), units);
+            routes.append("\n");
+        }
+        return routes.toString();
+    }
+
+    private String getDurationData(DecimalFormat format) {
+        StringBuilder duration = new StringBuilder();
+        for (Roa route : roas) {
+            Roa.Durations durations = route.duration();
+            if (durations == null) continue;
+
+            duration.append("__(").append(route.name()).append(")__\n");
+            appendDurationInfo(duration, format, "Onset", durations.onset());
+            appendDurationInfo(duration, format, "Comeup", durations.comeup());
+            appendDurationInfo(duration, format, "Peak", durations.peak());
+            appendDurationInfo(duration, format, "Offset", durations.offset());
+            appendDurationInfo(duration, format, "Afterglow", durations.afterglow());
+            appendDurationInfo(duration, format, "Total", durations.total());
+            duration.append("\n");
+        }
+        return duration.toString();
+    }
+
+    private static void appendDoseInfo(StringBuilder builder, DecimalFormat format, String label, DoseRange range, String units) {
+        if (range == null) return;
+        builder.append("**").append(label).append(":** ").append(range.format(format, units)).append("\n");
+    }
+
+    private static void appendDurationInfo(StringBuilder builder, DecimalFormat format, String label, DurationRange range) {
+        if (range == null) return;
+        builder.append("**").append(label).append(":** ").append(range.format(format)).append("\n");
+    }
+
+    private @Nullable String getValidImage() {
+        for (String image : images) {
+            if (image.endsWith(".png") || image.endsWith(".jpg") || image.endsWith(".jpeg")) {
+                return image;
+            }
+        }
+        return null;
+    }
+}
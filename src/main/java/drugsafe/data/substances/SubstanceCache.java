@@ -0,0 +1,146 @@
+package drugsafe.data.substances;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache of PsychonautWiki substance lookups.
+ * Entries expire after a fixed TTL and the least recently used entry is evicted once full.
+ * Lookups for substances that do not exist are cached as well (negative caching).
+ *
+ * @author TechnoVision
+ */
+public class SubstanceCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<String, Cached> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty substance cache.
+     *
+     * @param maxSize the maximum number of entries kept before evicting the least recently used.
+     * @param ttl how long a found substance is served from cache.
+     * @param negativeTtl how long a "does not exist" result is served from cache.
+     */
+    public SubstanceCache(int maxSize, Duration ttl, Duration negativeTtl) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if (size() > SubstanceCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Normalizes a substance name so that different spellings share a cache key.
+     *
+     * @param name the substance name as entered by a user.
+     * @return the normalized cache key.
+     */
+    public static String normalize(@NotNull String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets a valid cached lookup for a substance.
+     *
+     * @param name the substance name (normalized internally).
+     * @return the cached lookup, or null if nothing valid is cached.
+     */
+    public synchronized @Nullable Cached get(@NotNull String name) {
+        Cached cached = entries.get(normalize(name));
+        if (cached == null || cached.isExpired()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Gets a cached lookup for a substance even if it has expired.
+     * Expired entries are kept until evicted so they can be served while the API is unavailable.
+     *
+     * @param name the substance name (normalized internally).
+     * @return the cached lookup (possibly expired), or null if nothing is cached.
+     */
+    public synchronized @Nullable Cached getStale(@NotNull String name) {
+        return entries.get(normalize(name));
+    }
+
+    /**
+     * Caches a found substance and its rendered embed.
+     *
+     * @param name the substance name (normalized internally).
+     * @param data the parsed substance data.
+     * @param embed the finished info embed for this substance.
+     * @return the new cache entry.
+     */
+    public synchronized Cached put(@NotNull String name, @NotNull Substance data, @NotNull MessageEmbed embed) {
+        Cached cached = new Cached(data, embed, System.currentTimeMillis() + ttlMillis);
+        entries.put(normalize(name), cached);
+        return cached;
+    }
+
+    /**
+     * Caches the fact that a substance does not exist.
+     *
+     * @param name the substance name (normalized internally).
+     * @return the new cache entry.
+     */
+    public synchronized Cached putMissing(@NotNull String name) {
+        Cached cached = new Cached(null, null, System.currentTimeMillis() + negativeTtlMillis);
+        entries.put(normalize(name), cached);
+        return cached;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * A single cached lookup. Both data and embed are null if the substance does not exist.
+     */
+    public record Cached(@Nullable Substance data, @Nullable MessageEmbed embed, long expiresAt) {
+
+        public boolean exists() {
+            return data != null;
+        }
+
+        public boolean isExpired() {
+            return expiresAt < System.currentTimeMillis();
+        }
+    }
+}
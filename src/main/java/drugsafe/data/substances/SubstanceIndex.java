@@ -0,0 +1,158 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Immutable in-memory index of substance names and aliases for fast autocomplete.
+ * Supports case-insensitive prefix matching on a sorted key array,
+ * and typo tolerance through a trigram inverted index.
+ *
+ * @author TechnoVision
+ */
+public class SubstanceIndex {
+
+    /** Discord's maximum number of autocomplete choices */
+    public static final int MAX_CHOICES = 25;
+
+    /** Minimum trigram similarity (Dice coefficient) for a fuzzy match */
+    private static final double MIN_SIMILARITY = 0.3;
+
+    public static final SubstanceIndex EMPTY = new SubstanceIndex(Collections.emptyList());
+
+    /** Canonical substance names, the values returned to users */
+    private final String[] names;
+
+    /** Normalized names and aliases, sorted for binary search */
+    private final String[] keys;
+
+    /** Index into names for each key */
+    private final int[] keyNames;
+
+    /** Number of trigrams in each key */
+    private final int[] keyTrigrams;
+
+    /** Trigram to the ids of keys containing it */
+    private final Map<Integer, int[]> trigrams;
+
+    /**
+     * Builds an index from a list of substances. Only names and common names are used.
+     *
+     * @param substances the substances to index.
+     */
+    public SubstanceIndex(@NotNull List<Substance> substances) {
+        // Collect unique keys mapped to canonical names, canonical names win over aliases
+        TreeMap<String, Integer> keyMap = new TreeMap<>();
+        List<String> nameList = new ArrayList<>(substances.size());
+        for (Substance substance : substances) {
+            int id = nameList.size();
+            nameList.add(substance.name());
+            keyMap.put(SubstanceCache.normalize(substance.name()), id);
+        }
+        for (int id = 0; id < substances.size(); id++) {
+            for (String alias : substances.get(id).commonNames()) {
+                keyMap.putIfAbsent(SubstanceCache.normalize(alias), id);
+            }
+        }
+        keyMap.remove("");
+
+        this.names = nameList.toArray(new String[0]);
+        this.keys = keyMap.keySet().toArray(new String[0]);
+        this.keyNames = new int[keys.length];
+        this.keyTrigrams = new int[keys.length];
+
+        // Build trigram inverted index
+        Map<Integer, List<Integer>> postings = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : keyMap.entrySet()) {
+            keyNames[i] = entry.getValue();
+            int[] grams = trigramsOf(entry.getKey());
+            keyTrigrams[i] = grams.length;
+            for (int gram : grams) postings.computeIfAbsent(gram, g -> new ArrayList<>()).add(i);
+            i++;
+        }
+        this.trigrams = new HashMap<>(postings.size() * 2);
+        postings.forEach((gram, ids) -> trigrams.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Finds substance names matching user input, best matches first.
+     * Exact matches rank first, then prefix matches, then fuzzy matches by similarity.
+     *
+     * @param input the partial name typed by the user.
+     * @param limit the maximum number of names to return.
+     * @return matching canonical substance names without duplicates.
+     */
+    public List<String> search(@NotNull String input, int limit) {
+        String query = SubstanceCache.normalize(input);
+        LinkedHashSet<String> results = new LinkedHashSet<>();
+        if (query.isEmpty()) {
+            for (int i = 0; i < keys.length && results.size() < limit; i++) results.add(names[keyNames[i]]);
+            return new ArrayList<>(results);
+        }
+
+        // Prefix matches (the exact match, if any, sorts first)
+        int start = Arrays.binarySearch(keys, query);
+        if (start < 0) start = -start - 1;
+        for (int i = start; i < keys.length && results.size() < limit && keys[i].startsWith(query); i++) {
+            results.add(names[keyNames[i]]);
+        }
+        if (results.size() >= limit) return new ArrayList<>(results);
+
+        // Fuzzy matches by shared trigrams
+        int[] grams = trigramsOf(query);
+        if (grams.length == 0) return new ArrayList<>(results);
+        int[] shared = new int[keys.length];
+        int[] candidates = new int[keys.length];
+        int candidateCount = 0;
+        for (int gram : grams) {
+            int[] ids = trigrams.get(gram);
+            if (ids == null) continue;
+            for (int id : ids) {
+                if (shared[id]++ == 0) candidates[candidateCount++] = id;
+            }
+        }
+        long[] scored = new long[candidateCount];
+        int scoredCount = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int id = candidates[c];
+            double similarity = (2.0 * shared[id]) / (grams.length + keyTrigrams[id]);
+            if (similarity < MIN_SIMILARITY) continue;
+            // Pack score and id so a primitive sort orders by similarity (descending via negation)
+            scored[scoredCount++] = ((long) (-similarity * 1_000_000) << 32) | id;
+        }
+        Arrays.sort(scored, 0, scoredCount);
+        for (int s = 0; s < scoredCount && results.size() < limit; s++) {
+            results.add(names[keyNames[(int) scored[s]]]);
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * @return the number of distinct substances in this index.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of searchable names and aliases in this index.
+     */
+    public int keyCount() {
+        return keys.length;
+    }
+
+    /**
+     * Splits a normalized string into unique trigrams, padded with spaces so short words still match.
+     * Each trigram is packed into an int (three 10-bit characters, folded).
+     */
+    private static int[] trigramsOf(String key) {
+        String padded = "  " + key + " ";
+        Set<Integer> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add((padded.charAt(i) << 20) ^ (padded.charAt(i + 1) << 10) ^ padded.charAt(i + 2));
+        }
+        return grams.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
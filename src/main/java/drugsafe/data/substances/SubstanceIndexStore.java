@@ -0,0 +1,87 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current substance name index and rebuilds it in the background.
+ * The index is only rebuilt when the list of names or aliases has actually changed.
+ *
+ * @author TechnoVision
+ */
+public class SubstanceIndexStore {
+
+    private final PsychonautWiki api;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "substance-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile SubstanceIndex current = SubstanceIndex.EMPTY;
+    private volatile int currentHash;
+
+    /**
+     * @param api the client used to pull substance names.
+     */
+    public SubstanceIndexStore(@NotNull PsychonautWiki api) {
+        this.api = api;
+    }
+
+    /**
+     * @return the current index (empty until the first refresh completes).
+     */
+    public @NotNull SubstanceIndex get() {
+        return current;
+    }
+
+    /**
+     * Fetches every substance name and alias, rebuilding the index if anything changed.
+     *
+     * @throws IOException if the names could not be fetched.
+     */
+    public void refresh() throws IOException {
+        List<Substance> substances = api.fetchAll(SubstanceQuery.NAMES_ALL);
+        int hash = 1;
+        for (Substance substance : substances) {
+            hash = 31 * hash + substance.name().hashCode();
+            hash = 31 * hash + substance.commonNames().hashCode();
+        }
+        if (hash == currentHash && current != SubstanceIndex.EMPTY) return;
+        current = new SubstanceIndex(substances);
+        currentHash = hash;
+    }
+
+    /**
+     * Refreshes once in the background, without scheduling further refreshes.
+     */
+    public void load() {
+        executor.execute(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not refresh substance index: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Schedules periodic background refreshes, starting immediately.
+     *
+     * @param interval the time between refreshes.
+     */
+    public void scheduleRefresh(@NotNull Duration interval) {
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not refresh substance index: " + e.getMessage());
+            }
+        }, 0, interval.toMinutes(), TimeUnit.MINUTES);
+    }
+}
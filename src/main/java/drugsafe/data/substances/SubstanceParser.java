@@ -0,0 +1,305 @@
+package drugsafe.data.substances;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming parser that reads PsychonautWiki JSON straight into the typed substance model.
+ * Unknown fields are skipped and null values become null or empty lists.
+ *
+ * @author TechnoVision
+ */
+public class SubstanceParser {
+
+    /**
+     * Parses a full GraphQL response of the form {@code {"data":{"substances":[...]}}}.
+     *
+     * @param reader the response body.
+     * @return the substances in the response, in API order.
+     * @throws IOException if the response is malformed or contains no data.
+     */
+    public static List<Substance> parseResponse(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        List<Substance> substances = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("substances")) substances = parseSubstances(json);
+                    else json.skipValue();
+                }
+                json.endObject();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (substances == null) throw new IOException("Response does not contain any substance data");
+        return substances;
+    }
+
+    /**
+     * Parses a single substance object.
+     *
+     * @param reader the JSON of one substance.
+     * @return the parsed substance.
+     * @throws IOException if the JSON is malformed.
+     */
+    public static Substance parseSubstance(Reader reader) throws IOException {
+        return parseSubstance(new JsonReader(reader));
+    }
+
+    private static List<Substance> parseSubstances(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return Collections.emptyList();
+        }
+        List<Substance> substances = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) substances.add(parseSubstance(json));
+        json.endArray();
+        return substances;
+    }
+
+    private static Substance parseSubstance(JsonReader json) throws IOException {
+        String name = null, url = null, addictionPotential = null;
+        List<String> commonNames = Collections.emptyList();
+        List<String> chemical = Collections.emptyList(), psychoactive = Collections.emptyList();
+        List<String> effects = Collections.emptyList(), images = Collections.emptyList();
+        List<String> uncertain = Collections.emptyList(), unsafe = Collections.emptyList(), dangerous = Collections.emptyList();
+        List<Roa> roas = Collections.emptyList();
+        Substance.Tolerance tolerance = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "name" -> name = json.nextString();
+                case "url" -> url = json.nextString();
+                case "commonNames" -> commonNames = parseStrings(json);
+                case "addictionPotential" -> addictionPotential = json.nextString();
+                case "class" -> {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        switch (json.nextName()) {
+                            case "chemical" -> chemical = parseStrings(json);
+                            case "psychoactive" -> psychoactive = parseStrings(json);
+                            default -> json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                }
+                case "effects" -> effects = parseNamedList(json, "name");
+                case "images" -> images = parseNamedList(json, "image");
+                case "uncertainInteractions" -> uncertain = parseNamedList(json, "name");
+                case "unsafeInteractions" -> unsafe = parseNamedList(json, "name");
+                case "dangerousInteractions" -> dangerous = parseNamedList(json, "name");
+                case "roas" -> roas = parseRoas(json);
+                case "tolerance" -> tolerance = parseTolerance(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        if (name == null) throw new IOException("Substance is missing a name");
+        return new Substance(name, url, commonNames, chemical, psychoactive, effects, roas, addictionPotential,
+                uncertain, unsafe, dangerous, tolerance, images);
+    }
+
+    private static List<Roa> parseRoas(JsonReader json) throws IOException {
+        List<Roa> roas = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            String name = null;
+            Roa.Doses dose = null;
+            Roa.Durations duration = null;
+            DoseRange bioavailability = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "name" -> name = json.nextString();
+                    case "dose" -> dose = parseDoses(json);
+                    case "duration" -> duration = parseDurations(json);
+                    case "bioavailability" -> bioavailability = parseDoseRange(json);
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            if (name != null) roas.add(new Roa(name, dose, duration, bioavailability));
+        }
+        json.endArray();
+        return Collections.unmodifiableList(roas);
+    }
+
+    private static Roa.Doses parseDoses(JsonReader json) throws IOException {
+        String units = null;
+        DoseRange threshold = null, light = null, common = null, strong = null, heavy = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "units" -> units = json.nextString();
+                case "threshold" -> threshold = parseDoseRange(json);
+                case "light" -> light = parseDoseRange(json);
+                case "common" -> common = parseDoseRange(json);
+                case "strong" -> strong = parseDoseRange(json);
+                case "heavy" -> heavy = parseDoseRange(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Roa.Doses(units, threshold, light, common, strong, heavy);
+    }
+
+    private static Roa.Durations parseDurations(JsonReader json) throws IOException {
+        DurationRange onset = null, comeup = null, peak = null, offset = null, afterglow = null, total = null, duration = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "onset" -> onset = parseDurationRange(json);
+                case "comeup" -> comeup = parseDurationRange(json);
+                case "peak" -> peak = parseDurationRange(json);
+                case "offset" -> offset = parseDurationRange(json);
+                case "afterglow" -> afterglow = parseDurationRange(json);
+                case "total" -> total = parseDurationRange(json);
+                case "duration" -> duration = parseDurationRange(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Roa.Durations(onset, comeup, peak, offset, afterglow, total, duration);
+    }
+
+    /**
+     * Parses either a single number or a {min, max} object into a dose range.
+     */
+    private static @Nullable DoseRange parseDoseRange(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NUMBER) {
+            double value = json.nextDouble();
+            return new DoseRange(value, value);
+        }
+        Double min = null, max = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() != JsonToken.NUMBER) {
+                json.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "min" -> min = json.nextDouble();
+                case "max" -> max = json.nextDouble();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return (min != null && max != null) ? new DoseRange(min, max) : null;
+    }
+
+    private static @Nullable DurationRange parseDurationRange(JsonReader json) throws IOException {
+        Double min = null, max = null;
+        String units = "";
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "min" -> min = json.nextDouble();
+                case "max" -> max = json.nextDouble();
+                case "units" -> units = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return (min != null && max != null) ? new DurationRange(min, max, units) : null;
+    }
+
+    private static Substance.Tolerance parseTolerance(JsonReader json) throws IOException {
+        String full = null, half = null, zero = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "full" -> full = json.nextString();
+                case "half" -> half = json.nextString();
+                case "zero" -> zero = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Substance.Tolerance(full, half, zero);
+    }
+
+    private static List<String> parseStrings(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.STRING) values.add(json.nextString());
+            else json.skipValue();
+        }
+        json.endArray();
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Parses an array of objects into the string value of one field per object, e.g. [{"name": "x"}].
+     */
+    private static List<String> parseNamedList(JsonReader json, String key) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                if (json.nextName().equals(key) && json.peek() == JsonToken.STRING) values.add(json.nextString());
+                else json.skipValue();
+            }
+            json.endObject();
+        }
+        json.endArray();
+        return Collections.unmodifiableList(values);
+    }
+}
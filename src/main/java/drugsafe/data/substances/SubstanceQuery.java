@@ -0,0 +1,126 @@
+package drugsafe.data.substances;
+
+import okhttp3.RequestBody;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Catalog of precompiled PsychonautWiki GraphQL queries.
+ * Each query document is built and serialized once, user input is only ever passed as a GraphQL variable.
+ * Every query projects just the fields its caller needs.
+ *
+ * @author TechnoVision
+ */
+public enum SubstanceQuery {
+
+    /** Full info for the best match of a name, used by /info */
+    INFO("query", "String!", "substances(query: $query)", Fields.INFO),
+
+    /** Full info for every substance, used to build the offline snapshot */
+    INFO_ALL("limit", "Int!", "substances(limit: $limit)", Fields.INFO),
+
+    /** Names and aliases of every substance, used by autocomplete */
+    NAMES_ALL("limit", "Int!", "substances(limit: $limit)", Fields.NAMES),
+
+    /** Interaction lists for the best match of a name */
+    INTERACTIONS("query", "String!", "substances(query: $query)", Fields.INTERACTIONS),
+
+    /** Interaction lists (plus aliases and classes) for every substance, used to build the interaction matrix */
+    INTERACTIONS_ALL("limit", "Int!", "substances(limit: $limit)", Fields.INTERACTIONS);
+
+    /** Serialized request body up to the variable value: {"query":"...","variables":{"name": */
+    private final byte[] prefix;
+
+    /** Serialized request body after the variable value */
+    private static final byte[] SUFFIX = "}}".getBytes(StandardCharsets.UTF_8);
+
+    SubstanceQuery(String variable, String type, String selection, String fields) {
+        String document = "query($" + variable + ": " + type + ") { " + selection + " { " + fields + " } }";
+        String json = "{\"query\":" + quote(document) + ",\"variables\":{" + quote(variable) + ":";
+        this.prefix = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a request body for a query that takes a string variable.
+     *
+     * @param value the variable value, e.g. a substance name entered by a user.
+     * @return the serialized JSON request body.
+     */
+    public RequestBody body(@NotNull String value) {
+        return build(quote(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a request body for a query that takes an integer variable.
+     *
+     * @param value the variable value, e.g. a result limit.
+     * @return the serialized JSON request body.
+     */
+    public RequestBody body(int value) {
+        return build(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private RequestBody build(byte[] value) {
+        byte[] body = new byte[prefix.length + value.length + SUFFIX.length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        System.arraycopy(value, 0, body, prefix.length, value.length);
+        System.arraycopy(SUFFIX, 0, body, prefix.length + value.length, SUFFIX.length);
+        return RequestBody.create(body, PsychonautWiki.JSON);
+    }
+
+    /**
+     * Encodes a string as a JSON string literal.
+     *
+     * @param value the raw string.
+     * @return the quoted and escaped JSON string.
+     */
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Field projections shared by the queries above.
+     */
+    private static class Fields {
+
+        static final String NAMES = "name commonNames";
+
+        static final String INTERACTIONS = "name commonNames "
+                + "class { chemical psychoactive } "
+                + "uncertainInteractions { name } "
+                + "unsafeInteractions { name } "
+                + "dangerousInteractions { name }";
+
+        static final String INFO = "name url commonNames "
+                + "class { chemical psychoactive } "
+                + "effects { name } "
+                + "roas { name "
+                + "dose { units threshold heavy common { min max } light { min max } strong { min max } } "
+                + "duration { "
+                + "afterglow { min max units } comeup { min max units } duration { min max units } "
+                + "offset { min max units } onset { min max units } peak { min max units } total { min max units } } "
+                + "bioavailability { min max } } "
+                + "addictionPotential "
+                + "uncertainInteractions { name } "
+                + "unsafeInteractions { name } "
+                + "dangerousInteractions { name } "
+                + "tolerance { full half zero } "
+                + "images { image }";
+    }
+}
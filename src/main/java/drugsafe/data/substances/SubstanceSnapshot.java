@@ -0,0 +1,409 @@
+package drugsafe.data.substances;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Read-only snapshot of every PsychonautWiki substance, memory-mapped from a local file.
+ * Only the header is read when opened, substances are decoded one at a time on lookup.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * header: int magic, int version, int keyCount, int substanceCount, long createdAt
+ * index:  keyCount * (int keyOffset, int keyLength, int dataOffset, int dataLength), sorted by key
+ * keys:   normalized substance names and common names (UTF-8)
+ * data:   substanceCount * binary substance records, shared by every key of the substance
+ * </pre>
+ * A substance record stores the fields of {@link Substance} in declaration order. Strings are an int byte length
+ * (-1 for null) followed by UTF-8, lists are an int count followed by their items, nullable objects
+ * are a presence byte followed by their fields, and numbers are doubles.
+ *
+ * @author TechnoVision
+ */
+public class SubstanceSnapshot {
+
+    public static final int MAGIC = 0x44534E50; // "DSNP"
+    public static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int substances;
+    private final long createdAt;
+
+    private SubstanceSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a substance snapshot file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported substance snapshot version " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        this.substances = buffer.getInt(12);
+        this.createdAt = buffer.getLong(16);
+        if (HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated substance snapshot file");
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot file without parsing its contents.
+     *
+     * @param path the snapshot file.
+     * @return the opened snapshot.
+     * @throws IOException if the file is missing or not a valid snapshot.
+     */
+    public static SubstanceSnapshot open(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SubstanceSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Looks up a substance by name or common name using a binary search over the mapped index.
+     *
+     * @param name the substance name (normalized internally).
+     * @return the decoded substance, or null if it is not in this snapshot.
+     * @throws IOException if the stored substance is malformed.
+     */
+    public @Nullable Substance find(@NotNull String name) throws IOException {
+        byte[] key = SubstanceCache.normalize(name).getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return readData(mid);
+        }
+        return null;
+    }
+
+    /**
+     * @return every normalized name and common name in this snapshot, in sorted order.
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            names.add(StandardCharsets.UTF_8.decode(buffer.slice(buffer.getInt(entry), buffer.getInt(entry + 4))).toString());
+        }
+        return names;
+    }
+
+    /**
+     * @return the number of substances in this snapshot.
+     */
+    public int size() {
+        return substances;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Compares the key of an index entry to a search key, byte by byte (unsigned).
+     * UTF-8 byte order matches code point order, so no decoding is needed.
+     */
+    private int compareKey(int index, byte[] key) {
+        int entry = HEADER_SIZE + index * INDEX_ENTRY_SIZE;
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int min = Math.min(length, key.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = Integer.compare(buffer.get(offset + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private Substance readData(int index) throws IOException {
+        int entry = HEADER_SIZE + index * INDEX_ENTRY_SIZE;
+        try {
+            return readSubstance(buffer.slice(buffer.getInt(entry + 8), buffer.getInt(entry + 12)));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed substance record", e);
+        }
+    }
+
+    /* Decoding */
+
+    private static Substance readSubstance(ByteBuffer in) {
+        return new Substance(readString(in), readString(in), readStrings(in), readStrings(in), readStrings(in),
+                readStrings(in), readRoas(in), readString(in), readStrings(in), readStrings(in), readStrings(in),
+                readTolerance(in), readStrings(in));
+    }
+
+    private static List<Roa> readRoas(ByteBuffer in) {
+        int size = in.getInt();
+        List<Roa> roas = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            Roa.Doses dose = (in.get() == 0) ? null : new Roa.Doses(readString(in),
+                    readDoseRange(in), readDoseRange(in), readDoseRange(in), readDoseRange(in), readDoseRange(in));
+            Roa.Durations duration = (in.get() == 0) ? null : new Roa.Durations(readDurationRange(in),
+                    readDurationRange(in), readDurationRange(in), readDurationRange(in), readDurationRange(in),
+                    readDurationRange(in), readDurationRange(in));
+            roas.add(new Roa(name, dose, duration, readDoseRange(in)));
+        }
+        return Collections.unmodifiableList(roas);
+    }
+
+    private static @Nullable Substance.Tolerance readTolerance(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return new Substance.Tolerance(readString(in), readString(in), readString(in));
+    }
+
+    private static @Nullable DoseRange readDoseRange(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return new DoseRange(in.getDouble(), in.getDouble());
+    }
+
+    private static @Nullable DurationRange readDurationRange(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return new DurationRange(in.getDouble(), in.getDouble(), readString(in));
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        int size = in.getInt();
+        if (size == 0) return Collections.emptyList();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) values.add(readString(in));
+        return Collections.unmodifiableList(values);
+    }
+
+    private static @Nullable String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* Encoding */
+
+    private static byte[] encode(Substance substance) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, substance.name());
+        writeString(out, substance.url());
+        writeStrings(out, substance.commonNames());
+        writeStrings(out, substance.chemicalClass());
+        writeStrings(out, substance.psychoactiveClass());
+        writeStrings(out, substance.effects());
+        out.writeInt(substance.roas().size());
+        for (Roa roa : substance.roas()) {
+            writeString(out, roa.name());
+            Roa.Doses dose = roa.dose();
+            out.writeBoolean(dose != null);
+            if (dose != null) {
+                writeString(out, dose.units());
+                writeDoseRange(out, dose.threshold());
+                writeDoseRange(out, dose.light());
+                writeDoseRange(out, dose.common());
+                writeDoseRange(out, dose.strong());
+                writeDoseRange(out, dose.heavy());
+            }
+            Roa.Durations duration = roa.duration();
+            out.writeBoolean(duration != null);
+            if (duration != null) {
+                writeDurationRange(out, duration.onset());
+                writeDurationRange(out, duration.comeup());
+                writeDurationRange(out, duration.peak());
+                writeDurationRange(out, duration.offset());
+                writeDurationRange(out, duration.afterglow());
+                writeDurationRange(out, duration.total());
+                writeDurationRange(out, duration.duration());
+            }
+            writeDoseRange(out, roa.bioavailability());
+        }
+        writeString(out, substance.addictionPotential());
+        writeStrings(out, substance.uncertainInteractions());
+        writeStrings(out, substance.unsafeInteractions());
+        writeStrings(out, substance.dangerousInteractions());
+        Substance.Tolerance tolerance = substance.tolerance();
+        out.writeBoolean(tolerance != null);
+        if (tolerance != null) {
+            writeString(out, tolerance.full());
+            writeString(out, tolerance.half());
+            writeString(out, tolerance.zero());
+        }
+        writeStrings(out, substance.images());
+        return bytes.toByteArray();
+    }
+
+    private static void writeDoseRange(DataOutputStream out, @Nullable DoseRange range) throws IOException {
+        out.writeBoolean(range != null);
+        if (range == null) return;
+        out.writeDouble(range.min());
+        out.writeDouble(range.max());
+    }
+
+    private static void writeDurationRange(DataOutputStream out, @Nullable DurationRange range) throws IOException {
+        out.writeBoolean(range != null);
+        if (range == null) return;
+        out.writeDouble(range.min());
+        out.writeDouble(range.max());
+        writeString(out, range.units());
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) writeString(out, value);
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a snapshot file from a list of substances.
+     * Each substance is indexed by its name and by every common name not already taken by another substance's name.
+     * The file is written next to the target and atomically moved into place.
+     *
+     * @param path the snapshot file to create or replace.
+     * @param substances the substances, as parsed from the PsychonautWiki API.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(@NotNull Path path, @NotNull List<Substance> substances) throws IOException {
+        // Encode each substance once, keeping the first substance for duplicate names
+        List<byte[]> data = new ArrayList<>(substances.size());
+        TreeMap<String, Integer> keys = new TreeMap<>(SubstanceSnapshot::compareUtf8);
+        for (Substance substance : substances) {
+            if (keys.putIfAbsent(SubstanceCache.normalize(substance.name()), data.size()) == null) {
+                data.add(encode(substance));
+            }
+        }
+
+        // Then index common names, which never shadow a canonical name
+        for (Substance substance : substances) {
+            Integer index = keys.get(SubstanceCache.normalize(substance.name()));
+            for (String alias : substance.commonNames()) {
+                String key = SubstanceCache.normalize(alias);
+                if (!key.isEmpty()) keys.putIfAbsent(key, index);
+            }
+        }
+
+        // Lay out keys and data after the index
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        for (String key : keys.keySet()) keyBytes.add(key.getBytes(StandardCharsets.UTF_8));
+        int keysStart = HEADER_SIZE + keys.size() * INDEX_ENTRY_SIZE;
+        int dataStart = keysStart;
+        for (byte[] key : keyBytes) dataStart += key.length;
+        int[] dataOffsets = new int[data.size()];
+        int dataOffset = dataStart;
+        for (int i = 0; i < data.size(); i++) {
+            dataOffsets[i] = dataOffset;
+            dataOffset += data.get(i).length;
+        }
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            out.writeInt(data.size());
+            out.writeLong(System.currentTimeMillis());
+
+            int keyOffset = keysStart;
+            int i = 0;
+            for (int index : keys.values()) {
+                byte[] key = keyBytes.get(i++);
+                out.writeInt(keyOffset);
+                out.writeInt(key.length);
+                out.writeInt(dataOffsets[index]);
+                out.writeInt(data.get(index).length);
+                keyOffset += key.length;
+            }
+            for (byte[] key : keyBytes) out.write(key);
+            for (byte[] substance : data) out.write(substance);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int compareUtf8(String a, String b) {
+        return compareBytes(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int min = Math.min(a.length, b.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Reads substances from a saved API response or a bare substance array.
+     *
+     * @param reader the JSON to read.
+     * @return the parsed substances.
+     * @throws IOException if the JSON is malformed.
+     */
+    public static List<Substance> readJson(@NotNull Reader reader) throws IOException {
+        StringBuilder json = new StringBuilder();
+        char[] chunk = new char[8192];
+        for (int read; (read = reader.read(chunk)) != -1; ) json.append(chunk, 0, read);
+        String text = json.toString().strip();
+        if (text.startsWith("[")) text = "{\"data\":{\"substances\":" + text + "}}";
+        return SubstanceParser.parseResponse(new StringReader(text));
+    }
+
+    /**
+     * Builds a snapshot file, either from the live API or from a saved API response (for offline use).
+     * Usage: {@code SubstanceSnapshot <output file> [substances.json]}
+     *
+     * @param args the output file and an optional JSON file containing a substance array or a full API response.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: SubstanceSnapshot <output file> [substances.json]");
+            return;
+        }
+        List<Substance> substances;
+        if (args.length > 1) {
+            try (Reader reader = Files.newBufferedReader(Path.of(args[1]))) {
+                substances = readJson(reader);
+            }
+        } else {
+            substances = new PsychonautWiki(PsychonautWiki.API_URL).fetchAll(SubstanceQuery.INFO_ALL);
+        }
+        write(Path.of(args[0]), substances);
+        System.out.println("Wrote " + substances.size() + " substances to " + args[0]);
+    }
+}
@@ -0,0 +1,22 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handles interactions with components whose ID starts with a registered prefix.
+ *
+ * @author TechnoVision
+ */
+@FunctionalInterface
+public interface ComponentHandler {
+
+    /**
+     * Handles a component interaction.
+     *
+     * @param event the interaction.
+     * @param id the component ID, positioned at the field after the prefix.
+     * @throws ComponentId.Malformed if the ID doesn't have the fields this handler expects.
+     */
+    void handle(@NotNull GenericComponentInteractionCreateEvent event, @NotNull ComponentId id);
+}
@@ -0,0 +1,139 @@
+package drugsafe.listeners;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads the colon-separated fields of a component ID in place, without splitting it.
+ * Numbers are parsed straight from the ID, and only fields read as strings are copied.
+ * <p>
+ * Reading past the end of the ID or reading a field that isn't a number throws {@link Malformed},
+ * a shared exception without a stack trace, so rejecting a bad ID costs almost nothing.
+ *
+ * @author TechnoVision
+ */
+public final class ComponentId {
+
+    /** Thrown when a component ID doesn't have the expected fields */
+    public static final Malformed MALFORMED = new Malformed();
+
+    private final String id;
+    private int position;
+
+    /**
+     * @param id the full component ID.
+     * @param position the index of the first field to read.
+     */
+    public ComponentId(@NotNull String id, int position) {
+        this.id = id;
+        this.position = position;
+    }
+
+    /**
+     * @return true if there is at least one more field to read.
+     */
+    public boolean hasNext() {
+        return position <= id.length();
+    }
+
+    /**
+     * @return the index of the next field in the full ID.
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Reads the next field as a string.
+     */
+    public String next() {
+        int end = end();
+        String field = id.substring(position, end);
+        position = end + 1;
+        return field;
+    }
+
+    /**
+     * Checks if the next field equals a value, and skips it if it does.
+     *
+     * @param value the expected field.
+     * @return true if the field matched and was skipped.
+     */
+    public boolean skip(@NotNull String value) {
+        int end = end();
+        if (end - position != value.length() || !id.startsWith(value, position)) return false;
+        position = end + 1;
+        return true;
+    }
+
+    /**
+     * Reads the next field as a number, which may be negative.
+     */
+    public long nextLong() {
+        int end = end();
+        int i = position;
+        boolean negative = (i < end && id.charAt(i) == '-');
+        if (negative) i++;
+        // Snowflakes have up to 19 digits, anything longer can't fit in a long
+        if (i == end || end - i > 19) throw MALFORMED;
+        long value = 0;
+        for (; i < end; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') throw MALFORMED;
+            int digit = c - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) throw MALFORMED;
+            value = value * 10 + digit;
+        }
+        position = end + 1;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads the next field as an int, which may be negative.
+     */
+    public int nextInt() {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw MALFORMED;
+        return (int) value;
+    }
+
+    /**
+     * Reads every remaining field, including the colons between them.
+     */
+    public String rest() {
+        if (!hasNext()) throw MALFORMED;
+        String rest = id.substring(position);
+        position = id.length() + 1;
+        return rest;
+    }
+
+    /**
+     * Gets part of the full ID, from an earlier position up to the current one (without the trailing colon).
+     *
+     * @param start the index of the first field to include.
+     */
+    public String since(int start) {
+        return id.substring(start, Math.min(position - 1, id.length()));
+    }
+
+    private int end() {
+        if (!hasNext()) throw MALFORMED;
+        int end = id.indexOf(':', position);
+        return (end >= 0) ? end : id.length();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    /**
+     * A component ID doesn't have the expected fields.
+     */
+    public static final class Malformed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Malformed() {
+            super("Malformed component ID", null, false, false);
+        }
+    }
+}
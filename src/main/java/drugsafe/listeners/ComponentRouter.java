@@ -0,0 +1,97 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listens for component interactions and dispatches them to handlers by the prefix of their ID,
+ * the part before the first colon, e.g. "pagination" in "pagination:next:...".
+ * <p>
+ * Prefixes are looked up in a small hash table by hashing the ID in place,
+ * so dispatching doesn't copy or split the ID. Handlers read the rest of it through a {@link ComponentId}.
+ * Handlers must all be registered before the bot starts receiving events.
+ *
+ * @author TechnoVision
+ */
+public class ComponentRouter extends ListenerAdapter {
+
+    private static final int TABLE_SIZE = 32;
+
+    private final Route[] routes = new Route[TABLE_SIZE];
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder unrouted = new LongAdder();
+
+    /**
+     * Registers the handler for a prefix, replacing any handler registered for it before.
+     *
+     * @param prefix the first field of the component IDs to handle, without colons.
+     * @param handler handles the interactions.
+     */
+    public synchronized void register(@NotNull String prefix, @NotNull ComponentHandler handler) {
+        if (prefix.isEmpty() || prefix.indexOf(':') >= 0) throw new IllegalArgumentException("Invalid component prefix: " + prefix);
+        int slot = slot(prefix.hashCode());
+        Route route = routes[slot];
+        while (route != null && !route.prefix.equals(prefix)) route = route.next;
+        if (route != null) route.handler = handler;
+        else routes[slot] = new Route(prefix, handler, routes[slot]);
+    }
+
+    @Override
+    public void onGenericComponentInteractionCreate(@NotNull GenericComponentInteractionCreateEvent event) {
+        String id = event.getComponentId();
+        int colon = id.indexOf(':');
+        if (colon <= 0) {
+            malformed.increment();
+            return;
+        }
+
+        // Same hash as String.hashCode() of the prefix, computed without copying it
+        int hash = 0;
+        for (int i = 0; i < colon; i++) hash = 31 * hash + id.charAt(i);
+
+        for (Route route = routes[slot(hash)]; route != null; route = route.next) {
+            if (route.prefix.length() == colon && id.startsWith(route.prefix)) {
+                try {
+                    route.handler.handle(event, new ComponentId(id, colon + 1));
+                    routed.increment();
+                } catch (ComponentId.Malformed e) {
+                    malformed.increment();
+                }
+                return;
+            }
+        }
+        unrouted.increment();
+    }
+
+    private static int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+    }
+
+    public long getRouted() {
+        return routed.sum();
+    }
+
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+    public long getUnrouted() {
+        return unrouted.sum();
+    }
+
+    private static class Route {
+        private final String prefix;
+        private volatile ComponentHandler handler;
+        private final Route next;
+
+        private Route(String prefix, ComponentHandler handler, Route next) {
+            this.prefix = prefix;
+            this.handler = handler;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe registry of open paginated menus.
+ * <p>
+ * Every menu lives for the same amount of time, so menus expire in the order they were opened.
+ * A single queue ordered by opening time serves both as the expiry timer, swept once per tick by one thread,
+ * and as the eviction order when the number of open menus goes over the cap.
+ *
+ * @author TechnoVision
+ */
+public class MenuRegistry {
+
+    /** Resolution of the expiry timer */
+    private static final long TICK_MILLIS = 1000;
+
+    /** Number of rendered pages kept per menu, enough for going back and forth around the current page */
+    public static final int RENDERED_PAGES = 3;
+
+    private final long ttlMillis;
+    private volatile int maxMenus;
+    private final Consumer<Menu> onClose;
+
+    private final Map<String, Menu> menus = new ConcurrentHashMap<>();
+    /** Open menus, oldest first (guarded by itself) */
+    private final ArrayDeque<Menu> order = new ArrayDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pagination-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param ttl how long a menu stays open.
+     * @param maxMenus the most menus that can be open at once, the oldest are closed first.
+     * @param onClose called once for every menu that expires or is evicted, e.g. to disable its buttons.
+     */
+    public MenuRegistry(@NotNull Duration ttl, int maxMenus, @NotNull Consumer<Menu> onClose) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxMenus = maxMenus;
+        this.onClose = onClose;
+        timer.scheduleAtFixedRate(this::expire, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a new menu, evicting the oldest menus if there are too many open.
+     *
+     * @param uuid the unique ID of the menu.
+     * @param pages the pages of the menu.
+     * @return the new menu.
+     */
+    public Menu open(@NotNull String uuid, @NotNull PageSource pages) {
+        Menu menu = new Menu(uuid, pages, System.currentTimeMillis() + ttlMillis);
+        menus.put(uuid, menu);
+        List<Menu> overflow = new ArrayList<>();
+        synchronized (order) {
+            order.addLast(menu);
+            open.incrementAndGet();
+            while (open.get() > maxMenus && !order.isEmpty()) {
+                overflow.add(order.pollFirst());
+                open.decrementAndGet();
+            }
+        }
+        for (Menu oldest : overflow) {
+            close(oldest);
+            evicted.increment();
+        }
+        return menu;
+    }
+
+    /**
+     * Gets an open menu.
+     *
+     * @param uuid the unique ID of the menu.
+     * @return the menu, or null if it has expired or was evicted.
+     */
+    public @Nullable Menu get(@NotNull String uuid) {
+        return menus.get(uuid);
+    }
+
+    /**
+     * Attaches the hook of a menu's message once it has been sent, so its buttons can be disabled on close.
+     * If the menu was already closed, it is closed again now that it can be.
+     *
+     * @param menu the menu that was sent.
+     * @param hook a interaction hook pointing to the menu's message.
+     */
+    public void attach(@NotNull Menu menu, @NotNull InteractionHook hook) {
+        menu.hook = hook;
+        if (menu.closed && menu.notified.compareAndSet(false, true)) onClose.accept(menu);
+    }
+
+    /**
+     * Sets the most menus that can be open at once. Takes effect the next time a menu is opened.
+     */
+    public void setMaxMenus(int maxMenus) {
+        this.maxMenus = maxMenus;
+    }
+
+    public int size() {
+        return open.get();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    /**
+     * Closes every menu whose time is up. Runs once per tick on the timer thread.
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        List<Menu> due = new ArrayList<>();
+        synchronized (order) {
+            while (!order.isEmpty() && order.peekFirst().expiresAt <= now) {
+                due.add(order.pollFirst());
+                open.decrementAndGet();
+            }
+        }
+        for (Menu menu : due) {
+            try {
+                close(menu);
+                expired.increment();
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not close menu " + menu.uuid + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void close(Menu menu) {
+        menus.remove(menu.uuid, menu);
+        menu.closed = true;
+        if (menu.hook != null && menu.notified.compareAndSet(false, true)) onClose.accept(menu);
+    }
+
+    /**
+     * An open paginated menu. The current page and rendered pages are guarded by the menu itself,
+     * but pages are rendered outside of the lock.
+     */
+    public static class Menu {
+
+        public final String uuid;
+        public final PageSource pages;
+        private final long expiresAt;
+        private volatile InteractionHook hook;
+        private volatile boolean closed;
+        /** Set once the close callback has run, which can happen on close or on attach, whichever comes last */
+        private final AtomicBoolean notified = new AtomicBoolean();
+        private int page;
+
+        /** Recently rendered pages, least recently shown first */
+        private final Map<Integer, MessageEmbed> rendered = new LinkedHashMap<>(RENDERED_PAGES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MessageEmbed> eldest) {
+                return size() > RENDERED_PAGES;
+            }
+        };
+
+        private Menu(String uuid, PageSource pages, long expiresAt) {
+            this.uuid = uuid;
+            this.pages = pages;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Finds the page an offset from the current page leads to, without moving there.
+         *
+         * @param offset the number of pages to move by, e.g. -1 for the previous page.
+         * @return the page number, or -1 if there is no such page.
+         */
+        public synchronized int target(int offset) {
+            int next = page + offset;
+            if (next < 0 || next >= pages.getPageCount()) return -1;
+            return next;
+        }
+
+        /**
+         * Renders a page, reusing it if it was shown recently.
+         *
+         * @param page the page number, starting at 0.
+         * @return a future completed with the page embed, already completed if it was reused.
+         */
+        public CompletableFuture<MessageEmbed> render(int page) {
+            synchronized (this) {
+                MessageEmbed embed = rendered.get(page);
+                if (embed != null) return CompletableFuture.completedFuture(embed);
+            }
+            return pages.getPageAsync(page).thenApply(embed -> {
+                synchronized (this) {
+                    rendered.put(page, embed);
+                }
+                return embed;
+            });
+        }
+
+        /**
+         * Makes a page the current page, once it has been rendered and shown.
+         *
+         * @param page the page number, starting at 0.
+         */
+        public synchronized void show(int page) {
+            this.page = page;
+        }
+
+        public synchronized int getPage() {
+            return page;
+        }
+
+        public @Nullable InteractionHook getHook() {
+            return hook;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Renders one page of a stateless paginated menu from the parameters stored in its button IDs.
+ *
+ * @author TechnoVision
+ */
+@FunctionalInterface
+public interface PageRenderer {
+
+    /**
+     * Renders a page.
+     *
+     * @param user the user who pressed the button, who is always the owner of the menu.
+     * @param params the menu parameters given when the menu was sent.
+     * @param page the requested page, starting at 0.
+     * @return a future completed with the page, or with null if the menu has nothing left to show.
+     */
+    CompletableFuture<Page> render(@NotNull User user, @NotNull String params, int page);
+
+    /**
+     * A rendered page.
+     *
+     * @param embed the page embed.
+     * @param index the number of the page that was rendered, which may differ from the requested page if the menu shrank.
+     * @param count the current number of pages.
+     */
+    record Page(MessageEmbed embed, int index, int count) { }
+}
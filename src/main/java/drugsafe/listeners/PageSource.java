@@ -0,0 +1,41 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The pages of a paginated menu, each rendered only when it is shown.
+ *
+ * @author TechnoVision
+ */
+public interface PageSource {
+
+    /**
+     * @return the total number of pages, at least 1.
+     */
+    int getPageCount();
+
+    /**
+     * Renders one page.
+     *
+     * @param page the page number, starting at 0.
+     * @return the page embed.
+     */
+    MessageEmbed getPage(int page);
+
+    /**
+     * Renders one page without blocking the caller.
+     * Sources that read their pages from somewhere slow should render them on another thread.
+     *
+     * @param page the page number, starting at 0.
+     * @return a future completed with the page embed.
+     */
+    default CompletableFuture<MessageEmbed> getPageAsync(int page) {
+        try {
+            return CompletableFuture.completedFuture(getPage(page));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
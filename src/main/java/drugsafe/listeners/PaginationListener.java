@@ -1,63 +1,145 @@
 package drugsafe.listeners;
 
-import net.dv8tion.jda.api.entities.Message;
+import drugsafe.commands.CommandReply;
+import drugsafe.util.embeds.EmbedUtils;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
-import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
 import net.dv8tion.jda.api.exceptions.ErrorHandler;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
-import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
 import net.dv8tion.jda.api.requests.ErrorResponse;
-import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 
-import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
- * Listens for button input and handles all button backend.
+ * Handles all button backend for paginated menus and reset confirmations.
+ * Button presses are dispatched here by the {@link ComponentRouter}.
  *
  * @author TechnoVision
  */
-public class PaginationListener extends ListenerAdapter {
+public class PaginationListener {
 
     public static final int MINUTES_TO_DISABLE = 3;
 
-    public static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(20);
-    public static final Map<String, List<MessageEmbed>> menus = new HashMap<>();
-    public static final Map<String, List<Button>> buttons = new HashMap<>();
+    /** Default cap on open menus, see {@link MenuRegistry#setMaxMenus(int)} */
+    public static final int MAX_MENUS = 10000;
+
+    public static final MenuRegistry menus = new MenuRegistry(Duration.ofMinutes(MINUTES_TO_DISABLE), MAX_MENUS, PaginationListener::disableButtons);
+
+    /** Renderers for stateless menus, by kind */
+    private static final Map<String, PageRenderer> renderers = new ConcurrentHashMap<>();
+
+    /** Actions run when a reset is confirmed, by system name */
+    private static final Map<String, BiConsumer<GenericComponentInteractionCreateEvent, String>> resets = new ConcurrentHashMap<>();
+
+    /** Whether menus that support it are sent stateless instead of being kept open in the registry */
+    public static volatile boolean stateless = true;
+
+    /**
+     * Registers the renderer for a kind of stateless menu.
+     *
+     * @param kind a short name for the kind of menu, without colons.
+     * @param renderer renders pages of this kind of menu when a button is pressed.
+     */
+    public static void registerRenderer(String kind, PageRenderer renderer) {
+        renderers.put(kind, renderer);
+    }
+
+    /**
+     * Replies to a command with the first page of a stateless menu.
+     * The kind, owner, page, and parameters of the menu are stored in the button IDs, and the page is
+     * rendered by the kind's {@link PageRenderer} when a button is pressed, so nothing is kept for the menu.
+     *
+     * @param kind the kind of menu, which must have a registered renderer.
+     * @param userID the ID of the user who is accessing this menu.
+     * @param params the menu parameters passed to the renderer, at most about 60 characters.
+     * @param reply the reply to the command.
+     * @param firstPage the rendered first page.
+     * @param maxPages the total number of embed pages.
+     */
+    public static void sendStatelessMenu(String kind, String userID, String params, CommandReply reply, MessageEmbed firstPage, int maxPages) {
+        reply.send(new MessageCreateBuilder()
+                .setEmbeds(firstPage)
+                .setActionRow(getStatelessButtons(kind + ":" + userID, params, 0, maxPages))
+                .build(), false);
+    }
 
     /**
-     * Adds pagination buttons to a message action.
+     * Replies to a command with the first page of a paginated menu.
      *
      * @param userID the ID of the user who is accessing this menu.
-     * @param action the ReplyCallbackAction to add components to.
-     * @param embeds the embed pages.
+     * @param reply the reply to the command.
+     * @param firstPage the rendered first page.
+     * @param pages the pages of the menu, rendered when they are shown.
      */
-    public static void sendPaginatedMenu(String userID, ReplyCallbackAction action, List<MessageEmbed> embeds) {
+    public static void sendPaginatedMenu(String userID, CommandReply reply, MessageEmbed firstPage, PageSource pages) {
         String uuid = userID + ":" + UUID.randomUUID();
-        List<Button> components = getPaginationButtons(uuid, embeds.size());
-        buttons.put(uuid, components);
-        menus.put(uuid, embeds);
-        action.addActionRow(components).queue(interactionHook -> PaginationListener.disableButtons(uuid, interactionHook));
+        MenuRegistry.Menu menu = menus.open(uuid, pages);
+        reply.send(new MessageCreateBuilder()
+                .setEmbeds(firstPage)
+                .setActionRow(getPaginationButtons(uuid, 0, pages.getPageCount()))
+                .build(), false)
+                .thenAccept(interactionHook -> menus.attach(menu, interactionHook));
+    }
+
+    /**
+     * Replies to a command with a prompt to confirm a reset. Nothing is kept for the prompt,
+     * the system's registered action is run when the reset is confirmed.
+     *
+     * @param userID the ID of the user who can confirm the reset.
+     * @param systemName the name of the system being reset, which must have a registered action.
+     * @param params the parameters passed to the action, at most about 20 characters.
+     * @param reply the reply to the command.
+     * @param prompt the embed asking for confirmation.
+     */
+    public static void sendResetMenu(String userID, String systemName, String params, CommandReply reply, MessageEmbed prompt) {
+        reply.send(new MessageCreateBuilder()
+                .setEmbeds(prompt)
+                .setActionRow(getResetButtons(userID + ":" + UUID.randomUUID(), systemName + ":" + params))
+                .build(), false);
     }
 
     /**
      * Get a list of buttons for paginated embeds.
      *
      * @param uuid the unique ID generated for these buttons.
+     * @param page the current page.
      * @param maxPages the total number of embed pages.
      * @return A list of components to use on a paginated embed.
      */
-    private static List<Button> getPaginationButtons(String uuid, int maxPages) {
+    private static List<Button> getPaginationButtons(String uuid, int page, int maxPages) {
         return Arrays.asList(
-                Button.primary("pagination:prev:"+uuid, "Previous").asDisabled(),
-                Button.of(ButtonStyle.SECONDARY, "pagination:page:0", "1/"+maxPages).asDisabled(),
-                Button.primary("pagination:next:"+uuid, "Next")
+                Button.primary("pagination:prev:"+uuid, "Previous").withDisabled(page == 0),
+                Button.of(ButtonStyle.SECONDARY, "pagination:page:"+page, (page+1)+"/"+maxPages).asDisabled(),
+                Button.primary("pagination:next:"+uuid, "Next").withDisabled(page == maxPages - 1)
+        );
+    }
+
+    /**
+     * Get a list of buttons for stateless paginated embeds. Each button ID holds the page it moves to.
+     *
+     * @param menu the kind and owner of the menu, separated by a colon.
+     * @param params the menu parameters.
+     * @param page the current page.
+     * @param maxPages the total number of embed pages.
+     * @return A list of components to use on a paginated embed.
+     */
+    private static List<Button> getStatelessButtons(String menu, String params, int page, int maxPages) {
+        return Arrays.asList(
+                Button.primary("page:"+menu+":"+(page-1)+":"+params, "Previous").withDisabled(page == 0),
+                Button.of(ButtonStyle.SECONDARY, "pagination:page:"+page, (page+1)+"/"+maxPages).asDisabled(),
+                Button.primary("page:"+menu+":"+(page+1)+":"+params, "Next").withDisabled(page >= maxPages - 1)
         );
     }
 
@@ -76,90 +158,131 @@ public class PaginationListener extends ListenerAdapter {
     }
 
     /**
-     * Schedules a timer task to disable buttons and clear cache after a set time.
+     * Disables the buttons of a menu that expired or was evicted.
      *
-     * @param uuid the uuid of the components to disable.
-     * @param hook a interaction hook pointing to original message.
+     * @param menu the closed menu.
      */
-    public static void disableButtons(String uuid, InteractionHook hook) {
-        Runnable task = () -> {
-            List<Button> actionRow = PaginationListener.buttons.get(uuid);
-            List<Button> newActionRow = new ArrayList<>();
-            for (Button button : actionRow) {
-                newActionRow.add(button.asDisabled());
-            }
-            hook.editOriginalComponents(ActionRow.of(newActionRow)).queue(null, new ErrorHandler().ignore(ErrorResponse.UNKNOWN_MESSAGE));
-            PaginationListener.buttons.remove(uuid);
-            PaginationListener.menus.remove(uuid);
-        };
-        PaginationListener.executor.schedule(task, MINUTES_TO_DISABLE, TimeUnit.MINUTES);
+    private static void disableButtons(MenuRegistry.Menu menu) {
+        List<Button> actionRow = new ArrayList<>();
+        for (Button button : getPaginationButtons(menu.uuid, menu.getPage(), menu.pages.getPageCount())) {
+            actionRow.add(button.asDisabled());
+        }
+        menu.getHook().editOriginalComponents(ActionRow.of(actionRow)).queue(null, new ErrorHandler().ignore(ErrorResponse.UNKNOWN_MESSAGE));
     }
 
     /**
-     * Schedules a timer task to disable buttons and clear cache after a set time.
+     * Registers the pagination and reset confirmation button handlers.
      *
-     * @param uuid the uuid of the components to disable.
-     * @param hook a message hook pointing to original message.
+     * @param router the router receiving component interactions.
      */
-    public static void disableButtons(String uuid, Message hook) {
-        Runnable task = () -> {
-            List<Button> actionRow = PaginationListener.buttons.get(uuid);
-            List<Button> newActionRow = new ArrayList<>();
-            for (Button button : actionRow) {
-                newActionRow.add(button.asDisabled());
-            }
-            hook.editMessageComponents(ActionRow.of(newActionRow)).queue(null, new ErrorHandler().ignore(ErrorResponse.UNKNOWN_MESSAGE));
-            PaginationListener.buttons.remove(uuid);
-            PaginationListener.menus.remove(uuid);
-        };
-        PaginationListener.executor.schedule(task, MINUTES_TO_DISABLE, TimeUnit.MINUTES);
+    public static void register(ComponentRouter router) {
+        router.register("pagination", PaginationListener::onPagination);
+        router.register("page", PaginationListener::onStatelessPage);
+        router.register("reset", PaginationListener::onReset);
+    }
+
+    /**
+     * Registers what happens when the reset of a system is confirmed.
+     *
+     * @param systemName the name of the system, as given to the reset buttons.
+     * @param action resets the system with the parameters given to the prompt and replies to the button press.
+     */
+    public static void registerReset(String systemName, BiConsumer<GenericComponentInteractionCreateEvent, String> action) {
+        resets.put(systemName, action);
     }
 
-    @Override
-    public void onButtonInteraction(ButtonInteractionEvent event) {
-        // Check that these are 'help' buttons
-        String[] pressedArgs = event.getComponentId().split(":");
+    /**
+     * Handles "pagination:(prev|next):userID:uuid" buttons of open menus.
+     * The button is acknowledged right away if the page isn't rendered yet, then edited when it is.
+     * The menu only moves to the page once it has been rendered.
+     */
+    private static void onPagination(GenericComponentInteractionCreateEvent event, ComponentId id) {
+        int offset;
+        if (id.skip("next")) offset = 1;
+        else if (id.skip("prev")) offset = -1;
+        else return;
 
         // Check if user owns this menu
-        long userID = Long.parseLong(pressedArgs[2]);
-        if (userID != event.getUser().getIdLong()) return;
-
-        // Get other buttons
-        String uuid = userID+":"+pressedArgs[3];
-        List<Button> components = buttons.get(uuid);
-        if (components == null) return;
-        String[] storedArgs = components.get(0).getId().split(":");
-
-        if (pressedArgs[0].equals("pagination") && storedArgs[0].equals("pagination")) {
-            if (pressedArgs[1].equals("next")) {
-                // Move to next embed
-                int page = Integer.parseInt(components.get(1).getId().split(":")[2]) + 1;
-                List<MessageEmbed> embeds = menus.get(uuid);
-                if (page < embeds.size()) {
-                    // Update buttons
-                    components.set(1, components.get(1).withId("pagination:page:" + page).withLabel((page + 1) + "/" + embeds.size()));
-                    components.set(0, components.get(0).asEnabled());
-                    if (page == embeds.size() - 1) {
-                        components.set(2, components.get(2).asDisabled());
-                    }
-                    buttons.put(uuid, components);
-                    event.editComponents(ActionRow.of(components)).setEmbeds(embeds.get(page)).queue();
-                }
-            } else if (pressedArgs[1].equals("prev")) {
-                // Move to previous embed
-                int page = Integer.parseInt(components.get(1).getId().split(":")[2]) - 1;
-                List<MessageEmbed> embeds = menus.get(uuid);
-                if (page >= 0) {
-                    // Update buttons
-                    components.set(1, components.get(1).withId("pagination:page:" + page).withLabel((page + 1) + "/" + embeds.size()));
-                    components.set(2, components.get(2).asEnabled());
-                    if (page == 0) {
-                        components.set(0, components.get(0).asDisabled());
-                    }
-                    buttons.put(uuid, components);
-                    event.editComponents(ActionRow.of(components)).setEmbeds(embeds.get(page)).queue();
-                }
+        int start = id.position();
+        if (id.nextLong() != event.getUser().getIdLong()) return;
+        id.next();
+
+        // Get open menu
+        String uuid = id.since(start);
+        MenuRegistry.Menu menu = menus.get(uuid);
+        if (menu == null) return;
+
+        // Move to next or previous embed and update buttons
+        int page = menu.target(offset);
+        if (page < 0) return;
+        CompletableFuture<MessageEmbed> future = menu.render(page);
+        boolean deferred = !future.isDone();
+        if (deferred) event.deferEdit().queue();
+        future.whenComplete((embed, error) -> {
+            if (error != null) {
+                replyError(event, deferred, "An error occurred while loading that page!");
+                return;
             }
-        }
+            menu.show(page);
+            showPage(event, deferred, embed, ActionRow.of(getPaginationButtons(uuid, page, menu.pages.getPageCount())));
+        });
+    }
+
+    /**
+     * Handles "page:kind:userID:page:params" buttons of stateless menus, which hold everything needed to render the page.
+     * The button is acknowledged right away if the page isn't ready yet, then edited when it is.
+     */
+    private static void onStatelessPage(GenericComponentInteractionCreateEvent event, ComponentId id) {
+        int start = id.position();
+        String kind = id.next();
+        if (id.nextLong() != event.getUser().getIdLong()) return;
+        String menu = id.since(start);
+        int requested = id.nextInt();
+        String params = id.rest();
+        PageRenderer renderer = renderers.get(kind);
+        if (renderer == null) return;
+
+        CompletableFuture<PageRenderer.Page> future = renderer.render(event.getUser(), params, Math.max(0, requested));
+        boolean deferred = !future.isDone();
+        if (deferred) event.deferEdit().queue();
+        future.whenComplete((page, error) -> {
+            if (error != null || page == null) {
+                replyError(event, deferred, (error != null) ? "An error occurred while loading that page!" : "This menu has nothing left to show!");
+                return;
+            }
+            showPage(event, deferred, page.embed(), ActionRow.of(getStatelessButtons(menu, params, page.index(), page.count())));
+        });
+    }
+
+    /**
+     * Edits a menu's message to show a page, through the hook if the button press was deferred.
+     */
+    private static void showPage(GenericComponentInteractionCreateEvent event, boolean deferred, MessageEmbed embed, ActionRow components) {
+        if (deferred) event.getHook().editOriginalEmbeds(embed).setComponents(components).queue();
+        else event.editMessageEmbeds(embed).setComponents(components).queue();
+    }
+
+    /**
+     * Replies to a button press with an ephemeral error, through the hook if it was deferred.
+     */
+    private static void replyError(GenericComponentInteractionCreateEvent event, boolean deferred, String text) {
+        if (deferred) event.getHook().sendMessageEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
+        else event.replyEmbeds(EmbedUtils.createError(text)).setEphemeral(true).queue();
+    }
+
+    /**
+     * Handles "reset:(yes|no):userID:uuid:system:params" confirmation buttons.
+     * Declining (or confirming a system that can no longer be reset) removes the buttons.
+     */
+    private static void onReset(GenericComponentInteractionCreateEvent event, ComponentId id) {
+        boolean confirmed = id.skip("yes");
+        if (!confirmed && !id.skip("no")) throw ComponentId.MALFORMED;
+        if (id.nextLong() != event.getUser().getIdLong()) return;
+        id.next();
+
+        BiConsumer<GenericComponentInteractionCreateEvent, String> action = resets.get(id.next());
+        String params = id.hasNext() ? id.rest() : "";
+        if (confirmed && action != null) action.accept(event, params);
+        else event.editComponents().queue();
     }
 }
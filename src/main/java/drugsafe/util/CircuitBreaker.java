@@ -0,0 +1,114 @@
+package drugsafe.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple consecutive-failure circuit breaker.
+ * After a number of failures in a row the circuit opens and calls fail fast.
+ * Once the open duration has passed, a single trial call is let through (half-open):
+ * success closes the circuit again, failure re-opens it.
+ *
+ * @author TechnoVision
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    /**
+     * @param name the name of the protected resource, used in error messages.
+     * @param failureThreshold consecutive failures before the circuit opens.
+     * @param openDuration how long the circuit stays open before a trial call.
+     */
+    public CircuitBreaker(@NotNull String name, int failureThreshold, @NotNull Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+    }
+
+    /**
+     * Checks whether a call may proceed. Must be followed by
+     * {@link #recordSuccess()} or {@link #recordFailure()} if it returns true.
+     *
+     * @return true if the call may proceed, false if it should fail fast.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED -> { return true; }
+            case OPEN -> {
+                if (System.currentTimeMillis() - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+            }
+        }
+        // Open, or half-open with a trial call already in flight
+        rejected.increment();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) opened.increment();
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return true if calls are currently failing fast.
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt < openMillis;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    /**
+     * Thrown when a call is rejected because the circuit is open.
+     */
+    public static class OpenException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String name) {
+            super("Circuit for " + name + " is open");
+        }
+    }
+
+    /**
+     * @return a new exception for a call rejected by this breaker.
+     */
+    public OpenException newOpenException() {
+        return new OpenException(name);
+    }
+}
@@ -0,0 +1,91 @@
+package drugsafe.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets from 16 microseconds to about a minute.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they are accurate to within 2x.
+ *
+ * @author TechnoVision
+ */
+public class LatencyHistogram {
+
+    /** Upper bound of the first bucket in microseconds */
+    private static final long FIRST_BUCKET_MICROS = 16;
+    private static final int BUCKETS = 23;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a single measurement.
+     *
+     * @param nanos the measured latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = 0;
+        while (bucket < BUCKETS - 1 && micros > (FIRST_BUCKET_MICROS << bucket)) bucket++;
+        buckets[bucket].increment();
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Estimates a percentile.
+     *
+     * @param percentile the percentile between 0 and 100, e.g. 99.
+     * @return the upper bound of the bucket holding the percentile in microseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) return Math.min(FIRST_BUCKET_MICROS << i, getMax());
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean latency in microseconds.
+     */
+    public long getMean() {
+        long total = count.sum();
+        return (total == 0) ? 0 : totalMicros.sum() / total;
+    }
+
+    /**
+     * @return the highest latency recorded in microseconds.
+     */
+    public long getMax() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Registers count, mean, p50, p99, and max metrics for this histogram.
+     *
+     * @param prefix the dotted metric name prefix, e.g. "mongodb.find.doses".
+     */
+    public void register(String prefix) {
+        Metrics.register(prefix + ".count", this::getCount);
+        Metrics.register(prefix + ".mean_us", this::getMean);
+        Metrics.register(prefix + ".p50_us", () -> getPercentile(50));
+        Metrics.register(prefix + ".p99_us", () -> getPercentile(99));
+        Metrics.register(prefix + ".max_us", this::getMax);
+    }
+}
@@ -0,0 +1,78 @@
+package drugsafe.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of named runtime metrics exposed by the bot.
+ * Components register a supplier that is read whenever a snapshot is taken.
+ *
+ * @author TechnoVision
+ */
+public class Metrics {
+
+    private static final Map<String, LongSupplier> metrics = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Registers (or replaces) a metric.
+     *
+     * @param name the dotted name of the metric, e.g. "substances.cache.hits".
+     * @param value supplies the current value of the metric.
+     */
+    public static void register(@NotNull String name, @NotNull LongSupplier value) {
+        metrics.put(name, value);
+    }
+
+    /**
+     * Reads the current value of every registered metric.
+     *
+     * @return a map of metric names to values, sorted by name.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        metrics.forEach((name, value) -> snapshot.put(name, value.getAsLong()));
+        return snapshot;
+    }
+
+    /**
+     * Formats a snapshot as a single line, e.g. "commands.active=2 commands.queued=0".
+     *
+     * @return every registered metric and its current value, sorted by name.
+     */
+    public static String format() {
+        StringBuilder line = new StringBuilder();
+        snapshot().forEach((name, value) -> {
+            if (line.length() > 0) line.append(' ');
+            line.append(name).append('=').append(value);
+        });
+        return line.toString();
+    }
+
+    /**
+     * Prints a snapshot of every metric to the console periodically.
+     *
+     * @param interval the time between snapshots.
+     */
+    public static void scheduleLog(@NotNull Duration interval) {
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                System.out.println("METRICS: " + format());
+            } catch (Exception e) {
+                System.out.println("ERROR: Could not read metrics: " + e.getMessage());
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,76 @@
+package drugsafe.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into a single in-flight future.
+ * The first caller for a key starts the call, every caller that arrives before it
+ * completes shares the same result.
+ *
+ * @param <K> the key type identifying identical calls.
+ * @param <V> the result type of the call.
+ * @author TechnoVision
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs a call for a key, or joins the call already running for it.
+     *
+     * @param key the key identifying this call.
+     * @param call starts the call and returns its future, only invoked by the first caller.
+     * @return a future completed with the shared result.
+     */
+    public CompletableFuture<V> execute(@NotNull K key, @NotNull Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        // We are the leader for this key, start the real call
+        calls.increment();
+        CompletableFuture<V> future;
+        try {
+            future = call.get();
+        } catch (Throwable t) {
+            future = CompletableFuture.failedFuture(t);
+        }
+        future.whenComplete((result, error) -> {
+            inFlight.remove(key, promise);
+            if (error != null) promise.completeExceptionally(error);
+            else promise.complete(result);
+        });
+        return promise;
+    }
+
+    /**
+     * @return the number of calls that were actually started.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of callers that joined an in-flight call instead of starting one.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of calls currently in flight.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,164 @@
+package drugsafe.data;
+
+import drugsafe.data.logs.Entry;
+import drugsafe.data.logs.LogCache;
+import drugsafe.data.logs.LogRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against a real MongoDB server, set MONGODB_TEST_URI to enable.
+ */
+class DatabaseTest {
+
+    private static Database database;
+    private static long user;
+
+    @BeforeAll
+    static void connect() {
+        String uri = System.getenv("MONGODB_TEST_URI");
+        assumeTrue(uri != null && !uri.isBlank(), "MONGODB_TEST_URI is not set");
+        database = new Database(uri, "drugsafe-test");
+        user = ThreadLocalRandom.current().nextLong(1L << 60, Long.MAX_VALUE);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        if (database != null) database.doses.deleteMany(Database.userFilter(user));
+    }
+
+    @Test
+    void concurrentAddsAndRemovesOnlyRemoveTheRequestedDose() throws Exception {
+        LogRepository repository = new LogRepository(database, null, new LogCache(10, Duration.ofMinutes(10)));
+        int initial = 100;
+        LocalDateTime start = LocalDateTime.of(2020, 6, 1, 12, 0);
+        List<ObjectId> oldestFirst = new ArrayList<>();
+        for (int i = 0; i < initial; i++) {
+            Entry entry = dose(start.plusMinutes(i));
+            repository.add(entry).get();
+            oldestFirst.add(entry.getId());
+        }
+
+        // Removers keep removing the oldest dose while adders log newer ones, so position 0 is always an initial dose
+        int removers = 8, removesEach = 5, adders = 8, addsEach = 10;
+        ExecutorService threads = Executors.newFixedThreadPool(removers + adders);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Future<List<ObjectId>>> removals = new ArrayList<>();
+        List<Future<?>> additions = new ArrayList<>();
+        for (int t = 0; t < removers; t++) {
+            removals.add(threads.submit(() -> {
+                go.await();
+                List<ObjectId> ids = new ArrayList<>();
+                for (int i = 0; i < removesEach; i++) {
+                    try {
+                        Entry entry = repository.remove(user, "2020", 0).get();
+                        assertNotNull(entry);
+                        ids.add(entry.getId());
+                    } catch (ExecutionException e) {
+                        assertInstanceOf(ConcurrentModificationException.class, e.getCause());
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return ids;
+            }));
+        }
+        for (int t = 0; t < adders; t++) {
+            int adder = t;
+            additions.add(threads.submit(() -> {
+                go.await();
+                for (int i = 0; i < addsEach; i++) repository.add(dose(start.plusDays(30).plusMinutes(adder * addsEach + i))).get();
+                return null;
+            }));
+        }
+        go.countDown();
+        List<ObjectId> removed = new ArrayList<>();
+        for (Future<List<ObjectId>> result : removals) removed.addAll(result.get(60, TimeUnit.SECONDS));
+        for (Future<?> result : additions) result.get(60, TimeUnit.SECONDS);
+        threads.shutdown();
+
+        long remaining = database.doses.countDocuments(Database.userFilter(user));
+        assertEquals(removers * removesEach, removed.size() + conflicts.get());
+        assertEquals(removed.size(), new HashSet<>(removed).size(), "A dose was reported removed twice");
+        assertEquals(new HashSet<>(oldestFirst.subList(0, removed.size())), new HashSet<>(removed),
+                "A remove deleted a dose other than the oldest one");
+        assertEquals(initial + adders * addsEach - removed.size(), remaining);
+    }
+
+    @Test
+    void statsRebuiltDuringConcurrentAddsCountEveryDoseOnce() throws Exception {
+        LogRepository repository = new LogRepository(database, null, new LogCache(10, Duration.ofMinutes(10)));
+        long other = user + 1;
+        int adders = 8, addsEach = 25;
+        ExecutorService threads = Executors.newFixedThreadPool(adders + 1);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        List<Future<?>> additions = new ArrayList<>();
+        for (int t = 0; t < adders; t++) {
+            additions.add(threads.submit(() -> {
+                go.await();
+                for (int i = 0; i < addsEach; i++) {
+                    Entry entry = dose(LocalDateTime.of(2021, 3, 1, 12, 0).plusMinutes(i));
+                    entry.setUser(other);
+                    repository.add(entry).get();
+                }
+                done.incrementAndGet();
+                return null;
+            }));
+        }
+        // Keep dropping the aggregate so reads and adds rebuild it while doses are still being added
+        Future<?> rebuilds = threads.submit(() -> {
+            go.await();
+            while (done.get() < adders) {
+                database.stats.deleteOne(Database.userFilter(other));
+                repository.stats(other).get();
+            }
+            return null;
+        });
+        go.countDown();
+        for (Future<?> result : additions) result.get(60, TimeUnit.SECONDS);
+        rebuilds.get(60, TimeUnit.SECONDS);
+        threads.shutdown();
+
+        try {
+            long total = -1;
+            for (int attempt = 0; attempt < 100 && total != adders * addsEach; attempt++) {
+                Thread.sleep(50);
+                total = ((Number) repository.stats(other).get().get("total")).longValue();
+            }
+            assertEquals(adders * addsEach, total);
+        } finally {
+            database.doses.deleteMany(Database.userFilter(other));
+            database.stats.deleteOne(Database.userFilter(other));
+        }
+    }
+
+    private static Entry dose(LocalDateTime time) {
+        Entry entry = new Entry("MDMA", 100, "mg", "oral", Date.from(time.atZone(ZoneId.systemDefault()).toInstant()));
+        entry.setId(new ObjectId());
+        entry.setUser(user);
+        return entry;
+    }
+}
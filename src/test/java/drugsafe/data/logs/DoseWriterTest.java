@@ -0,0 +1,165 @@
+package drugsafe.data.logs;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOneModel;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the write-behind queue against a stubbed collection that records or rejects bulk writes.
+ */
+class DoseWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<ObjectId> written = Collections.synchronizedList(new ArrayList<>());
+    private volatile BulkWriter bulkWriter = models -> { };
+    private DoseWriter writer;
+
+    private interface BulkWriter {
+        void write(List<ReplaceOneModel<Entry>> models);
+    }
+
+    @AfterEach
+    void closeWriter() {
+        if (writer != null) writer.close();
+    }
+
+    @Test
+    void journalsAndWritesConcurrentSubmitsOnce() throws Exception {
+        writer = new DoseWriter(collection(), dir.resolve("journal"), 1_000_000, Duration.ofHours(1));
+        int threads = 16, each = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < each; i++) writer.submit(dose());
+                return null;
+            }));
+        }
+        for (Future<?> result : results) result.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(threads * each, writer.getPending());
+        assertEquals(threads * each, journalLines());
+        assertTrue(writer.getSyncs() <= threads * each);
+
+        writer.flush();
+        assertEquals(threads * each, written.size());
+        assertEquals(threads * each, written.stream().distinct().count());
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    void movesPermanentlyRejectedDosesToTheDeadLetterFile() throws Exception {
+        Entry rejected = dose();
+        bulkWriter = models -> {
+            for (int i = 0; i < models.size(); i++) {
+                if (models.get(i).getReplacement() == rejected) {
+                    // The write is unordered, so every other dose is still written
+                    for (ReplaceOneModel<Entry> model : models) {
+                        if (model.getReplacement() != rejected) written.add(model.getReplacement().getId());
+                    }
+                    throw new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+                            List.of(new BulkWriteError(121, "Document failed validation", new BsonDocument(), i)), null, new ServerAddress());
+                }
+            }
+        };
+        writer = new DoseWriter(collection(), dir.resolve("journal"), 100, Duration.ofHours(1));
+        writer.submit(dose());
+        writer.submit(rejected);
+        writer.submit(dose());
+        writer.flush();
+
+        assertEquals(0, writer.getPending());
+        assertEquals(2, written.size());
+        assertFalse(written.contains(rejected.getId()));
+        assertEquals(1, writer.getDeadLettered());
+        List<String> dead = Files.readAllLines(dir.resolve("journal.dead"), StandardCharsets.UTF_8);
+        assertEquals(1, dead.size());
+        assertTrue(dead.get(0).contains(rejected.getId().toHexString()));
+
+        // Later doses are not held up by the rejected one
+        writer.submit(dose());
+        writer.flush();
+        assertEquals(3, written.size());
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    void keepsDosesQueuedAfterATransientFailure() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        bulkWriter = models -> {
+            if (calls.incrementAndGet() == 1) throw new MongoTimeoutException("Timed out waiting for a server");
+        };
+        writer = new DoseWriter(collection(), dir.resolve("journal"), 100, Duration.ofHours(1));
+        for (int i = 0; i < 5; i++) writer.submit(dose());
+
+        for (int attempt = 0; attempt < 3 && writer.getPending() > 0; attempt++) {
+            try {
+                writer.flush();
+            } catch (MongoTimeoutException ignored) { }
+        }
+
+        assertEquals(0, writer.getPending());
+        assertEquals(5, written.size());
+        assertEquals(1, writer.getFailures());
+        assertEquals(0, writer.getDeadLettered());
+    }
+
+    private long journalLines() throws IOException {
+        long lines = 0;
+        try (var files = Files.list(dir)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().matches("journal\\.\\d+")).toList()) {
+                lines += Files.readAllLines(file, StandardCharsets.UTF_8).size();
+            }
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Entry> collection() {
+        return (MongoCollection<Entry>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MongoCollection.class },
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("bulkWrite")) return null;
+                    List<ReplaceOneModel<Entry>> models = (List<ReplaceOneModel<Entry>>) args[0];
+                    bulkWriter.write(models);
+                    for (ReplaceOneModel<Entry> model : models) written.add(model.getReplacement().getId());
+                    return null;
+                });
+    }
+
+    private static Entry dose() {
+        Entry entry = new Entry("MDMA", 100, "mg", "oral", new Date());
+        entry.setId(new ObjectId());
+        entry.setUser(290505829871222784L);
+        return entry;
+    }
+}
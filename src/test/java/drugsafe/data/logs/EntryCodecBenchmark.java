@@ -0,0 +1,87 @@
+package drugsafe.data.logs;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Encodes and decodes a typical dose with EntryCodec and with the automatic POJO codec it replaced.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main EntryCodecBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntryCodecBenchmark {
+
+    private final Codec<Entry> pojo = fromRegistries(MongoClientSettings.getDefaultCodecRegistry(),
+            fromProviders(PojoCodecProvider.builder().automatic(true).build())).get(Entry.class);
+    private final Codec<Entry> codec = new EntryCodec();
+
+    private Entry entry;
+    private byte[] pojoBytes;
+    private byte[] codecBytes;
+
+    @Setup
+    public void encodeDocuments() {
+        entry = new Entry(290505829871222784L, "MDMA", 120, "mg", "oral");
+        entry.setId(new ObjectId());
+        entry.setDate(new Date(1_700_000_000_000L));
+        pojoBytes = encode(pojo);
+        codecBytes = encode(codec);
+        System.out.printf("%nDocument size: POJO codec %d bytes, EntryCodec %d bytes%n", pojoBytes.length, codecBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodePojo() {
+        return encode(pojo);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return encode(codec);
+    }
+
+    @Benchmark
+    public Entry decodePojo() {
+        return decode(pojo, pojoBytes);
+    }
+
+    @Benchmark
+    public Entry decodeCodec() {
+        return decode(codec, codecBytes);
+    }
+
+    private byte[] encode(Codec<Entry> codec) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(128);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, entry, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Entry decode(Codec<Entry> codec, byte[] bytes) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return codec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package drugsafe.data.logs;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogCacheTest {
+
+    private static final long ALICE = 290505829871222784L;
+    private static final long BOB = 1012345678901234567L;
+
+    @Test
+    void dropsReadsThatRacedAnInvalidationOfTheSameUser() {
+        LogCache cache = new LogCache(10, Duration.ofMinutes(10));
+        long stamp = cache.stamp(ALICE);
+        cache.invalidate(ALICE);
+        cache.putCount(ALICE, "2023", 3, stamp);
+        cache.putPage(ALICE, "2023", 0, List.of(new Entry(ALICE, "MDMA", 100, "mg", "oral")), stamp);
+
+        assertNull(cache.getCount(ALICE, "2023"));
+        assertNull(cache.getPage(ALICE, "2023", 0));
+    }
+
+    @Test
+    void keepsReadsOfOtherUsersDuringAnInvalidation() {
+        LogCache cache = new LogCache(10, Duration.ofMinutes(10));
+        long stamp = cache.stamp(BOB);
+        cache.invalidate(ALICE);
+        cache.putCount(BOB, "2024", 7, stamp);
+
+        assertEquals(7L, cache.getCount(BOB, "2024"));
+    }
+}
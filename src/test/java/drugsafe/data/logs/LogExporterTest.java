@@ -0,0 +1,82 @@
+package drugsafe.data.logs;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogExporterTest {
+
+    @Test
+    void escapesFormulaCells() {
+        assertEquals("\"'=HYPERLINK(\"\"http://x\"\")\"", LogExporter.csv("=HYPERLINK(\"http://x\")"));
+        assertEquals("'+1", LogExporter.csv("+1"));
+        assertEquals("'-1", LogExporter.csv("-1"));
+        assertEquals("'@SUM(A1)", LogExporter.csv("@SUM(A1)"));
+        assertEquals("\"'=1,2\"", LogExporter.csv("=1,2"));
+        assertEquals("2C-B", LogExporter.csv("2C-B"));
+        assertEquals("", LogExporter.csv(""));
+    }
+
+    /**
+     * Exports 100k doses generated on the fly and checks that doses already written can be garbage collected,
+     * i.e. the exporter doesn't keep the log in memory.
+     */
+    @Test
+    void streamsLargeLogsInBoundedHeap() throws IOException {
+        int doses = 100_000;
+        List<WeakReference<Entry>> written = new ArrayList<>();
+        Iterator<Entry> entries = new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < doses;
+            }
+
+            @Override
+            public Entry next() {
+                Entry entry = new Entry("Dose " + next, 100, "mg", "oral", new Date(1_600_000_000_000L + next * 60_000L));
+                if (next % 10_000 == 0) written.add(new WeakReference<>(entry));
+                next++;
+                return entry;
+            }
+        };
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        LogExporter.Export export = LogExporter.export(entries, LogExporter.Format.CSV);
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+
+        try {
+            assertEquals(doses, export.count());
+            int cleared = 0;
+            for (WeakReference<Entry> entry : written) if (entry.get() == null) cleared++;
+            assertTrue(cleared >= written.size() - 1, "Exported doses are still reachable");
+            System.out.printf("Exported %d doses to %d KB, heap grew by %d KB%n",
+                    doses, Files.size(export.file()) / 1024, Math.max(0, after - before) / 1024);
+
+            long lines = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(export.file())), StandardCharsets.UTF_8))) {
+                while (reader.readLine() != null) lines++;
+            }
+            assertEquals(doses + 1, lines);
+        } finally {
+            Files.deleteIfExists(export.file());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package drugsafe.data.logs;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the log of a 1,000 dose year by rendering only the first page, as a PageSource does,
+ * against rendering every page up front, as Log.getEmbed used to. Both use the same page renderer
+ * on doses already in memory, so database reads are left out.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main LogPagesBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogPagesBenchmark {
+
+    private User user;
+    private List<Entry> newestFirst;
+
+    @Setup
+    public void generateLog() {
+        user = (User) Proxy.newProxyInstance(User.class.getClassLoader(), new Class<?>[] { User.class }, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "getName" -> "drugsafe";
+                    case "getAsTag" -> "drugsafe#0";
+                    case "getEffectiveAvatarUrl" -> "https://cdn.discordapp.com/embed/avatars/0.png";
+                    case "getIdLong" -> 290505829871222784L;
+                    default -> null;
+                });
+        newestFirst = new ArrayList<>();
+        for (int i = 999; i >= 0; i--) {
+            newestFirst.add(new Entry("Substance " + (i % 40), 10 + i % 90, "mg", "oral", new Date(1_672_531_200_000L + i * 31_000_000L)));
+        }
+    }
+
+    @Benchmark
+    public MessageEmbed firstPage() {
+        return Log.getPage(user, "2023", newestFirst.subList(0, Log.PAGE_SIZE), newestFirst.size());
+    }
+
+    @Benchmark
+    public List<MessageEmbed> allPages() {
+        List<MessageEmbed> pages = new ArrayList<>();
+        for (int start = 0; start < newestFirst.size(); start += Log.PAGE_SIZE) {
+            List<Entry> entries = newestFirst.subList(start, Math.min(newestFirst.size(), start + Log.PAGE_SIZE));
+            pages.add(Log.getPage(user, "2023", entries, newestFirst.size() - start));
+        }
+        return pages;
+    }
+}
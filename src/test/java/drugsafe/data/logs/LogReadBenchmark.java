@@ -0,0 +1,112 @@
+package drugsafe.data.logs;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import drugsafe.data.Database;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the first page of a year's log for users with 10, 1k and 50k doses,
+ * from a legacy single-document log and from per-dose documents through {@link LogPages}.
+ * Runs against a real MongoDB server: set MONGODB_TEST_URI and
+ * run with {@code java -cp <test classpath> org.openjdk.jmh.Main LogReadBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogReadBenchmark {
+
+    private static final String YEAR = "2023";
+
+    @Param({"10", "1000", "50000"})
+    public int doses;
+
+    private Database database;
+    private MongoClient legacyClient;
+    private MongoCollection<Log> legacyLogs;
+    private LogCache cache;
+    private User user;
+    private long userID;
+
+    @Setup
+    public void insertDoses() {
+        String uri = System.getenv("MONGODB_TEST_URI");
+        if (uri == null || uri.isBlank()) throw new IllegalStateException("MONGODB_TEST_URI is not set");
+        database = new Database(uri, "drugsafe-bench");
+        // Legacy logs live in their own collection so the background migration leaves them alone
+        legacyClient = MongoClients.create(uri);
+        legacyLogs = legacyClient.getDatabase("drugsafe-bench").getCollection("legacy_logs", Log.class)
+                .withCodecRegistry(database.logs.getCodecRegistry());
+        cache = new LogCache(16, Duration.ofMinutes(10));
+
+        userID = ThreadLocalRandom.current().nextLong(1L << 60, Long.MAX_VALUE);
+        user = (User) Proxy.newProxyInstance(User.class.getClassLoader(), new Class<?>[] { User.class }, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "getIdLong" -> userID;
+                    case "getName", "getAsTag" -> "drugsafe";
+                    case "getEffectiveAvatarUrl" -> "https://cdn.discordapp.com/embed/avatars/0.png";
+                    default -> null;
+                });
+
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        long step = Duration.ofDays(364).toMinutes() / doses;
+        List<Entry> entries = new ArrayList<>(doses);
+        for (int i = 0; i < doses; i++) {
+            Date date = Date.from(start.plusMinutes(i * step).atZone(ZoneId.systemDefault()).toInstant());
+            Entry entry = new Entry("Substance " + (i % 40), 10 + i % 90, "mg", "oral", date);
+            entry.setUser(userID);
+            entries.add(entry);
+        }
+        for (int i = 0; i < doses; i += 1000) database.doses.insertMany(entries.subList(i, Math.min(doses, i + 1000)));
+
+        Log log = new Log(userID);
+        log.setDoses(Map.of(YEAR, entries));
+        for (Entry entry : entries) entry.setId(null);
+        legacyLogs.insertOne(log);
+    }
+
+    @TearDown
+    public void deleteDoses() {
+        database.doses.deleteMany(Database.userFilter(userID));
+        legacyLogs.deleteOne(Filters.eq("user", userID));
+        legacyClient.close();
+    }
+
+    @Benchmark
+    public MessageEmbed legacyDocument() {
+        Log log = legacyLogs.find(Filters.eq("user", userID)).first();
+        List<Entry> entries = log.getDoses().get(YEAR);
+        List<Entry> page = new ArrayList<>(Log.PAGE_SIZE);
+        for (int i = entries.size() - 1; i >= 0 && page.size() < Log.PAGE_SIZE; i--) page.add(entries.get(i));
+        return Log.getPage(user, YEAR, page, entries.size());
+    }
+
+    @Benchmark
+    public MessageEmbed perDoseDocuments() {
+        cache.invalidate(userID);
+        return new LogPages(database, cache, user, YEAR).getPage(0);
+    }
+}
@@ -0,0 +1,143 @@
+package drugsafe.data.logs;
+
+import drugsafe.data.Database;
+import net.dv8tion.jda.api.entities.User;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 500 interactions arrive at once on a single event thread, as they do on a JDA shard,
+ * half of them logging a dose and half opening a log.
+ * Handling them inline blocks the event thread on every read and write, the repository only starts them.
+ * Runs against a real MongoDB server, set MONGODB_TEST_URI to enable.
+ */
+class LogRepositoryLoadTest {
+
+    private static final int INTERACTIONS = 500;
+    private static final String YEAR = "2023";
+
+    private static Database database;
+    private static long firstUser;
+
+    @BeforeAll
+    static void connect() {
+        String uri = System.getenv("MONGODB_TEST_URI");
+        assumeTrue(uri != null && !uri.isBlank(), "MONGODB_TEST_URI is not set");
+        database = new Database(uri, "drugsafe-test");
+        firstUser = ThreadLocalRandom.current().nextLong(1L << 60, Long.MAX_VALUE - 2 * INTERACTIONS);
+
+        // Every user who opens a log has a page of doses
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2 * INTERACTIONS; i++) {
+            for (int d = 0; d < Log.PAGE_SIZE; d++) entries.add(dose(firstUser + i));
+        }
+        database.doses.insertMany(entries);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        if (database == null) return;
+        for (int i = 0; i < 2 * INTERACTIONS; i++) {
+            database.doses.deleteMany(Database.userFilter(firstUser + i));
+            database.stats.deleteOne(Database.userFilter(firstUser + i));
+        }
+    }
+
+    @Test
+    void repositoryKeepsTheEventThreadFreeUnderConcurrentInteractions() throws Exception {
+        LogCache cache = new LogCache(16, Duration.ofMinutes(10));
+        LogRepository repository = new LogRepository(database, null, cache);
+
+        Load inline = run(firstUser, user -> {
+            if (user % 2 == 0) {
+                database.doses.insertOne(dose(user));
+                cache.invalidate(user);
+            } else {
+                new LogPages(database, cache, user(user), YEAR).getPage(0);
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        Load pooled = run(firstUser + INTERACTIONS, user -> (user % 2 == 0)
+                ? repository.add(dose(user))
+                : repository.view(user(user), YEAR));
+
+        assertEquals(0, inline.failed());
+        assertEquals(0, pooled.failed(), "Interactions were turned away by the database pool");
+        assertTrue(pooled.busyNanos() < inline.busyNanos(), "Event thread busy " + pooled + " with the repository, " + inline + " inline");
+    }
+
+    /**
+     * Dispatches one interaction per user on a single event thread and waits for every reply.
+     */
+    private static Load run(long firstUser, Handler handler) throws Exception {
+        ExecutorService events = Executors.newSingleThreadExecutor();
+        AtomicLong busy = new AtomicLong();
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<?>> replies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < INTERACTIONS; i++) {
+            long user = firstUser + i;
+            CompletableFuture<Void> reply = new CompletableFuture<>();
+            replies.add(reply);
+            events.execute(() -> {
+                long handling = System.nanoTime();
+                handler.handle(user).whenComplete((result, error) -> {
+                    if (error != null) failed.incrementAndGet();
+                    reply.complete(null);
+                });
+                busy.addAndGet(System.nanoTime() - handling);
+            });
+        }
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).get(120, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        events.shutdown();
+        return new Load(busy.get(), elapsed, failed.get());
+    }
+
+    private static User user(long id) {
+        return (User) Proxy.newProxyInstance(User.class.getClassLoader(), new Class<?>[] { User.class }, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "getIdLong" -> id;
+                    case "getName", "getAsTag" -> "drugsafe";
+                    case "getEffectiveAvatarUrl" -> "https://cdn.discordapp.com/embed/avatars/0.png";
+                    default -> null;
+                });
+    }
+
+    private static Entry dose(long user) {
+        Entry entry = new Entry("MDMA", 100, "mg", "oral", new Date(1_680_000_000_000L + ThreadLocalRandom.current().nextLong(10_000_000_000L)));
+        entry.setId(new ObjectId());
+        entry.setUser(user);
+        return entry;
+    }
+
+    private interface Handler {
+        CompletableFuture<?> handle(long user);
+    }
+
+    private record Load(long busyNanos, long elapsedNanos, int failed) {
+
+        @Override
+        public String toString() {
+            return busyNanos / 1_000_000 + "ms (every reply after " + elapsedNanos / 1_000_000 + "ms)";
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package drugsafe.data.substances;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks every pair in a five substance stack with the precomputed matrix, against resolving
+ * both sides' interaction lists for each pair on the fly. Uses 550 generated substances whose
+ * interactions name other substances, aliases, and classes.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main InteractionMatrixBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InteractionMatrixBenchmark {
+
+    private List<Substance> substances;
+    private Map<String, Substance> byName;
+    private InteractionMatrix matrix;
+    private String[] stack;
+
+    @Setup
+    public void buildMatrix() {
+        Random random = new Random(42);
+        int n = 550;
+        substances = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<String> commonNames = List.of("Alias " + i, "Street " + i);
+            List<String> chemical = List.of("Chemical " + random.nextInt(40));
+            List<String> psychoactive = List.of("Psychoactive " + random.nextInt(12));
+            substances.add(new Substance("Substance " + i, null, commonNames, chemical, psychoactive, Collections.emptyList(),
+                    Collections.emptyList(), null, interactions(random, n, 3), interactions(random, n, 3),
+                    interactions(random, n, 2), null, Collections.emptyList()));
+        }
+        byName = new HashMap<>();
+        for (Substance substance : substances) byName.put(SubstanceCache.normalize(substance.name()), substance);
+        matrix = new InteractionMatrix(substances);
+        stack = new String[] { "Substance 12", "Substance 140", "Substance 277", "Substance 390", "Substance 511" };
+    }
+
+    private static List<String> interactions(Random random, int n, int count) {
+        List<String> interactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            interactions.add(switch (random.nextInt(4)) {
+                case 0 -> "Substance " + random.nextInt(n);
+                case 1 -> "Street " + random.nextInt(n);
+                case 2 -> "Chemical " + random.nextInt(40) + "s";
+                default -> "Psychoactive " + random.nextInt(12) + "s";
+            });
+        }
+        return interactions;
+    }
+
+    @Benchmark
+    public List<InteractionMatrix.Pair> matrix() {
+        int[] ids = new int[stack.length];
+        for (int i = 0; i < stack.length; i++) ids[i] = matrix.idOf(stack[i]);
+        return matrix.check(ids);
+    }
+
+    @Benchmark
+    public List<InteractionMatrix.Level> scanLists() {
+        Substance[] resolved = new Substance[stack.length];
+        for (int i = 0; i < stack.length; i++) resolved[i] = byName.get(SubstanceCache.normalize(stack[i]));
+        List<InteractionMatrix.Level> levels = new ArrayList<>();
+        for (int i = 0; i < resolved.length; i++) {
+            for (int j = i + 1; j < resolved.length; j++) {
+                InteractionMatrix.Level level = InteractionMatrix.Level.values()[Math.max(
+                        listed(resolved[i], resolved[j]).ordinal(), listed(resolved[j], resolved[i]).ordinal())];
+                levels.add(level);
+            }
+        }
+        return levels;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public InteractionMatrix build() {
+        return new InteractionMatrix(substances);
+    }
+
+    private static InteractionMatrix.Level listed(Substance substance, Substance other) {
+        if (names(substance.dangerousInteractions(), other)) return InteractionMatrix.Level.DANGEROUS;
+        if (names(substance.unsafeInteractions(), other)) return InteractionMatrix.Level.UNSAFE;
+        if (names(substance.uncertainInteractions(), other)) return InteractionMatrix.Level.UNCERTAIN;
+        return InteractionMatrix.Level.NONE;
+    }
+
+    private static boolean names(List<String> interactions, Substance other) {
+        for (String interaction : interactions) {
+            String key = SubstanceCache.normalize(interaction);
+            if (key.equals(SubstanceCache.normalize(other.name()))) return true;
+            for (String alias : other.commonNames()) if (key.equals(SubstanceCache.normalize(alias))) return true;
+            String group = key.endsWith("s") ? key.substring(0, key.length() - 1) : key;
+            for (String chemical : other.chemicalClass()) if (group.equals(SubstanceCache.normalize(chemical))) return true;
+            for (String psychoactive : other.psychoactiveClass()) if (group.equals(SubstanceCache.normalize(psychoactive))) return true;
+        }
+        return false;
+    }
+}
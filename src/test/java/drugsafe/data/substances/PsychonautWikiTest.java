@@ -0,0 +1,160 @@
+package drugsafe.data.substances;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import drugsafe.util.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the client against a local stub of the PsychonautWiki API.
+ */
+class PsychonautWikiTest {
+
+    private HttpServer server;
+    private ExecutorService stubThreads;
+    private String url;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Handler handler;
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        stubThreads = Executors.newCachedThreadPool();
+        server.setExecutor(stubThreads);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try (exchange) {
+                exchange.getRequestBody().readAllBytes();
+                handler.handle(exchange);
+            } catch (Exception ignored) {
+                // The client gave up on the request
+            }
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    @Test
+    void failsSlowResponsesAtTheReadTimeout() {
+        handler = exchange -> {
+            Thread.sleep(3000);
+            respond(exchange, 200, fixture());
+        };
+        PsychonautWiki api = new PsychonautWiki(url, Duration.ofMillis(500), Duration.ofMillis(300), 4, 5, Duration.ofSeconds(30));
+
+        long start = System.nanoTime();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> api.search(SubstanceQuery.INFO, "lsd").get(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertInstanceOf(IOException.class, error.getCause());
+        assertTrue(elapsed < 1500, "Request took " + elapsed + "ms");
+    }
+
+    @Test
+    void runsAsManyRequestsAtOnceAsTheBulkheadAllows() throws Exception {
+        int maxConcurrent = 12;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        handler = exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(600);
+            inFlight.decrementAndGet();
+            respond(exchange, 200, fixture());
+        };
+        PsychonautWiki api = new PsychonautWiki(url, Duration.ofMillis(500), Duration.ofMillis(1000), maxConcurrent, 50, Duration.ofSeconds(30));
+
+        List<CompletableFuture<List<Substance>>> searches = new ArrayList<>();
+        for (int i = 0; i < maxConcurrent; i++) searches.add(api.search(SubstanceQuery.INFO, "lsd"));
+        for (CompletableFuture<List<Substance>> search : searches) {
+            assertEquals("LSD", search.get(5, TimeUnit.SECONDS).get(0).name());
+        }
+        assertEquals(maxConcurrent, maxInFlight.get());
+    }
+
+    @Test
+    void opensAfterConsecutiveFailuresAndClosesAfterATrialRequest() throws Exception {
+        handler = exchange -> respond(exchange, 502, new byte[0]);
+        PsychonautWiki api = new PsychonautWiki(url, Duration.ofMillis(500), Duration.ofMillis(500), 4, 3, Duration.ofMillis(300));
+
+        for (int i = 0; i < 3; i++) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> api.search(SubstanceQuery.INFO, "lsd").get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, error.getCause());
+        }
+        assertTrue(api.isUnavailable());
+
+        // Open: fails fast without calling the API
+        CompletableFuture<List<Substance>> rejected = api.search(SubstanceQuery.INFO, "lsd");
+        assertTrue(rejected.isCompletedExceptionally());
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(CircuitBreaker.OpenException.class, error.getCause());
+        assertEquals(3, requests.get());
+
+        // Half-open: one trial request goes through and closes the circuit
+        Thread.sleep(400);
+        handler = exchange -> respond(exchange, 200, fixture());
+        List<Substance> substances = api.search(SubstanceQuery.INFO, "lsd").get(5, TimeUnit.SECONDS);
+        assertEquals("LSD", substances.get(0).name());
+        assertFalse(api.isUnavailable());
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    void reopensWhenTheTrialRequestFails() throws Exception {
+        handler = exchange -> respond(exchange, 500, new byte[0]);
+        PsychonautWiki api = new PsychonautWiki(url, Duration.ofMillis(500), Duration.ofMillis(500), 4, 2, Duration.ofMillis(300));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ExecutionException.class, () -> api.search(SubstanceQuery.INFO, "lsd").get(5, TimeUnit.SECONDS));
+        }
+
+        Thread.sleep(400);
+        assertThrows(ExecutionException.class, () -> api.search(SubstanceQuery.INFO, "lsd").get(5, TimeUnit.SECONDS));
+        assertTrue(api.isUnavailable());
+        assertTrue(api.search(SubstanceQuery.INFO, "lsd").isCompletedExceptionally());
+        assertEquals(3, requests.get());
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, (body.length == 0) ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static byte[] fixture() throws IOException {
+        try (InputStream in = PsychonautWikiTest.class.getResourceAsStream("/substances.json")) {
+            return in.readAllBytes();
+        }
+    }
+}
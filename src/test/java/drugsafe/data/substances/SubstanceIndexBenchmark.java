@@ -0,0 +1,117 @@
+package drugsafe.data.substances;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplete over a generated set of 550 substances with up to three common names each,
+ * against a linear scan that checks every name for a prefix or an edit distance of at most two.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main SubstanceIndexBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubstanceIndexBenchmark {
+
+    private static final String[] SYLLABLES = {
+            "me", "tha", "phe", "ny", "lo", "tri", "pta", "mi", "ne", "di", "zo", "pam", "ket", "a", "ci", "do",
+            "xy", "ben", "flu", "bro", "cy", "clo", "eth", "pro", "pyl", "am", "ine", "ol", "ide", "one"
+    };
+
+    @Param({"prefix", "exact", "typo"})
+    public String kind;
+
+    private SubstanceIndex index;
+    private List<Substance> substances;
+    private String query;
+
+    @Setup
+    public void buildIndex() {
+        Random random = new Random(42);
+        substances = new ArrayList<>();
+        for (int i = 0; i < 550; i++) {
+            List<String> commonNames = new ArrayList<>();
+            int aliases = random.nextInt(4);
+            for (int a = 0; a < aliases; a++) commonNames.add(word(random, 2 + random.nextInt(2)));
+            substances.add(substance(word(random, 2 + random.nextInt(3)) + (i % 7 == 0 ? "-" + i : ""), commonNames));
+        }
+        index = new SubstanceIndex(substances);
+
+        String name = substances.get(137).name();
+        query = switch (kind) {
+            case "prefix" -> name.substring(0, 2);
+            case "exact" -> name;
+            default -> name.substring(0, 2) + 'q' + name.substring(3);
+        };
+    }
+
+    @Benchmark
+    public List<String> index() {
+        return index.search(query, SubstanceIndex.MAX_CHOICES);
+    }
+
+    @Benchmark
+    public List<String> linearScan() {
+        String input = SubstanceCache.normalize(query);
+        List<String> results = new ArrayList<>();
+        for (Substance substance : substances) {
+            if (results.size() >= SubstanceIndex.MAX_CHOICES) break;
+            if (matches(SubstanceCache.normalize(substance.name()), input)) {
+                results.add(substance.name());
+                continue;
+            }
+            for (String alias : substance.commonNames()) {
+                if (matches(SubstanceCache.normalize(alias), input)) {
+                    results.add(substance.name());
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean matches(String key, String input) {
+        return key.startsWith(input) || distance(key, input) <= 2;
+    }
+
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+
+    private static Substance substance(String name, List<String> commonNames) {
+        List<String> none = Collections.emptyList();
+        return new Substance(name, null, commonNames, none, none, none, Collections.emptyList(), null, none, none, none, null, none);
+    }
+}
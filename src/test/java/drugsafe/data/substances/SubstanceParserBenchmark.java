@@ -0,0 +1,52 @@
+package drugsafe.data.substances;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the LSD/MDMA fixture response into a JsonObject tree, as InfoCommand used to,
+ * and into the typed model with the streaming parser.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main SubstanceParserBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubstanceParserBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    private String response;
+
+    @Setup
+    public void readFixture() throws IOException {
+        try (InputStream in = SubstanceParserBenchmark.class.getResourceAsStream("/substances.json")) {
+            response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public JsonObject jsonObjectTree() {
+        JsonObject json = GSON.fromJson(response, JsonObject.class);
+        return json.getAsJsonObject("data").getAsJsonArray("substances").get(0).getAsJsonObject();
+    }
+
+    @Benchmark
+    public Substance streamingParser() throws IOException {
+        List<Substance> substances = SubstanceParser.parseResponse(new StringReader(response));
+        return substances.get(0);
+    }
+}
@@ -0,0 +1,77 @@
+package drugsafe.data.substances;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubstanceSnapshotTest {
+
+    private static List<Substance> fixture;
+
+    @BeforeAll
+    static void readFixture() throws IOException {
+        try (Reader reader = new InputStreamReader(SubstanceSnapshotTest.class.getResourceAsStream("/substances.json"), StandardCharsets.UTF_8)) {
+            fixture = SubstanceSnapshot.readJson(reader);
+        }
+    }
+
+    @Test
+    void roundTripsEverySubstance(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("substances.snapshot");
+        SubstanceSnapshot.write(file, fixture);
+        SubstanceSnapshot snapshot = SubstanceSnapshot.open(file);
+
+        assertEquals(2, snapshot.size());
+        for (Substance substance : fixture) {
+            assertEquals(substance, snapshot.find(substance.name()));
+        }
+        assertEquals("\u00b5g", snapshot.find("lsd").getRoa("sublingual").dose().units());
+        assertNull(snapshot.find("mdma").tolerance());
+        assertNull(snapshot.find("Caffeine"));
+    }
+
+    @Test
+    void findsSubstancesByCommonName(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("substances.snapshot");
+        SubstanceSnapshot.write(file, fixture);
+        SubstanceSnapshot snapshot = SubstanceSnapshot.open(file);
+
+        assertEquals("LSD", snapshot.find("Acid").name());
+        assertEquals("LSD", snapshot.find("lsd-25").name());
+        assertEquals("MDMA", snapshot.find("molly").name());
+        assertTrue(snapshot.getNames().containsAll(List.of("acid", "ecstasy", "lsd", "mdma")));
+    }
+
+    @Test
+    void commonNamesNeverShadowNames(@TempDir Path dir) throws IOException {
+        Substance mda = named("MDA", List.of("MDMA", "Sally"));
+        Path file = dir.resolve("substances.snapshot");
+        SubstanceSnapshot.write(file, List.of(mda, fixture.get(1)));
+        SubstanceSnapshot snapshot = SubstanceSnapshot.open(file);
+
+        assertEquals("MDMA", snapshot.find("mdma").name());
+        assertEquals("MDA", snapshot.find("sally").name());
+    }
+
+    @Test
+    void rejectsOtherFiles(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("substances.json"), "{\"data\":{}}");
+        assertThrows(IOException.class, () -> SubstanceSnapshot.open(file));
+    }
+
+    private static Substance named(String name, List<String> commonNames) {
+        List<String> none = Collections.emptyList();
+        return new Substance(name, null, commonNames, none, none, none, Collections.emptyList(), null, none, none, none, null, none);
+    }
+}
@@ -0,0 +1,59 @@
+package drugsafe.listeners;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentIdTest {
+
+    @Test
+    void parsesEighteenDigitSnowflake() {
+        ComponentId id = new ComponentId("page:log:290505829871222784:2:290505829871222784:2023", 5);
+        assertEquals("log", id.next());
+        assertEquals(290505829871222784L, id.nextLong());
+        assertEquals(2, id.nextInt());
+        assertEquals("290505829871222784:2023", id.rest());
+    }
+
+    @Test
+    void parsesNineteenDigitSnowflake() {
+        ComponentId id = new ComponentId("page:log:1012345678901234567:0:1012345678901234567:2024", 5);
+        assertEquals("log", id.next());
+        assertEquals(1012345678901234567L, id.nextLong());
+        assertEquals(0, id.nextInt());
+        assertEquals("1012345678901234567:2024", id.rest());
+    }
+
+    @Test
+    void parsesLongBounds() {
+        assertEquals(Long.MAX_VALUE, new ComponentId(String.valueOf(Long.MAX_VALUE), 0).nextLong());
+        assertEquals(-Long.MAX_VALUE, new ComponentId(String.valueOf(-Long.MAX_VALUE), 0).nextLong());
+    }
+
+    @Test
+    void rejectsOverflow() {
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("9223372036854775808", 0).nextLong());
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("99999999999999999999", 0).nextLong());
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("2147483648", 0).nextInt());
+    }
+
+    @Test
+    void rejectsMalformedFields() {
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("", 0).nextLong());
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("-", 0).nextLong());
+        assertThrows(ComponentId.Malformed.class, () -> new ComponentId("12a4", 0).nextLong());
+        ComponentId id = new ComponentId("reset:yes", 6);
+        assertTrue(id.skip("yes"));
+        assertThrows(ComponentId.Malformed.class, id::next);
+    }
+
+    @Test
+    void readsSpanSinceMark() {
+        ComponentId id = new ComponentId("pagination:next:1012345678901234567:abc-def", 11);
+        assertTrue(id.skip("next"));
+        int start = id.position();
+        assertEquals(1012345678901234567L, id.nextLong());
+        id.next();
+        assertEquals("1012345678901234567:abc-def", id.since(start));
+    }
+}
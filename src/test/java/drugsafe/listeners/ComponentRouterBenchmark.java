@@ -0,0 +1,99 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
+import net.dv8tion.jda.api.interactions.components.ComponentInteraction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches a button press through the router and reads its ID with ComponentId, up to the menu lookup,
+ * against the split(":") parsing the pagination listener used before.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main ComponentRouterBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ComponentRouterBenchmark {
+
+    private static final long USER = 1012345678901234567L;
+
+    @Param({"pagination", "page", "malformed"})
+    public String kind;
+
+    private final ComponentRouter router = new ComponentRouter();
+    private final Map<String, String> menus = new HashMap<>();
+    private GenericComponentInteractionCreateEvent event;
+    private String found;
+
+    @Setup
+    public void createEvent() {
+        String id = switch (kind) {
+            case "pagination" -> "pagination:next:" + USER + ":5f0c9e2a";
+            case "page" -> "page:log:" + USER + ":3:2023";
+            default -> "pagination:next:" + USER + "x:5f0c9e2a";
+        };
+        User user = (User) Proxy.newProxyInstance(User.class.getClassLoader(), new Class<?>[] { User.class },
+                (proxy, method, args) -> method.getName().equals("getIdLong") ? USER : null);
+        ComponentInteraction interaction = (ComponentInteraction) Proxy.newProxyInstance(ComponentInteraction.class.getClassLoader(),
+                new Class<?>[] { ComponentInteraction.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "getComponentId" -> id;
+                    case "getUser" -> user;
+                    default -> null;
+                });
+        event = new GenericComponentInteractionCreateEvent(null, 0, interaction);
+        menus.put(USER + ":5f0c9e2a", "menu");
+        menus.put("log", "renderer");
+
+        router.register("pagination", (event, componentId) -> {
+            if (!componentId.skip("next") && !componentId.skip("prev")) return;
+            int start = componentId.position();
+            if (componentId.nextLong() != event.getUser().getIdLong()) return;
+            componentId.next();
+            found = menus.get(componentId.since(start));
+        });
+        router.register("page", (event, componentId) -> {
+            String kind = componentId.next();
+            if (componentId.nextLong() != event.getUser().getIdLong()) return;
+            int page = componentId.nextInt();
+            found = menus.get(kind) + page + componentId.rest();
+        });
+    }
+
+    @Benchmark
+    public String router() {
+        router.onGenericComponentInteractionCreate(event);
+        return found;
+    }
+
+    @Benchmark
+    public String split() {
+        try {
+            String[] pressedArgs = event.getComponentId().split(":");
+            if (pressedArgs[0].equals("pagination")) {
+                long userID = Long.parseLong(pressedArgs[2]);
+                if (userID != event.getUser().getIdLong()) return null;
+                found = menus.get(userID + ":" + pressedArgs[3]);
+            } else if (pressedArgs[0].equals("page")) {
+                long userID = Long.parseLong(pressedArgs[2]);
+                if (userID != event.getUser().getIdLong()) return null;
+                int page = Integer.parseInt(pressedArgs[3]);
+                found = menus.get(pressedArgs[1]) + page + pressedArgs[4];
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+        return found;
+    }
+}
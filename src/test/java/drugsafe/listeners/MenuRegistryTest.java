@@ -0,0 +1,194 @@
+package drugsafe.listeners;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MenuRegistryTest {
+
+    private ExecutorService database;
+
+    @BeforeEach
+    void startDatabase() {
+        database = Executors.newFixedThreadPool(16);
+    }
+
+    @AfterEach
+    void stopDatabase() {
+        database.shutdownNow();
+    }
+
+    @Test
+    void movesOnlyOnceThePageIsRendered() {
+        MenuRegistry registry = new MenuRegistry(Duration.ofMinutes(3), 10, menu -> { });
+        MenuRegistry.Menu menu = registry.open("1:a", new PageSource() {
+            @Override
+            public int getPageCount() {
+                return 3;
+            }
+
+            @Override
+            public MessageEmbed getPage(int page) {
+                if (page == 1) throw new IllegalStateException("database unavailable");
+                return embed(page);
+            }
+        });
+
+        int page = menu.target(1);
+        assertEquals(1, page);
+        assertTrue(menu.render(page).isCompletedExceptionally());
+        assertEquals(0, menu.getPage());
+        assertEquals(-1, menu.target(-1));
+    }
+
+    /**
+     * 500 users turn the page of their menus at once, with every page read taking 20ms on a 16 thread pool.
+     * The thread handling the button presses must only start the renders, not wait for them.
+     */
+    @Test
+    void rendersConcurrentTurnsWithoutBlockingTheEventThread() throws Exception {
+        int menus = 500;
+        long readMillis = 20;
+        MenuRegistry registry = new MenuRegistry(Duration.ofMinutes(3), menus, menu -> { });
+        List<MenuRegistry.Menu> open = new ArrayList<>();
+        for (int i = 0; i < menus; i++) open.add(registry.open(i + ":menu", new SlowPages(readMillis)));
+
+        AtomicInteger shown = new AtomicInteger();
+        List<CompletableFuture<?>> renders = new ArrayList<>();
+        long start = System.nanoTime();
+        for (MenuRegistry.Menu menu : open) {
+            int page = menu.target(1);
+            renders.add(menu.render(page).thenAccept(embed -> {
+                menu.show(page);
+                shown.incrementAndGet();
+            }));
+        }
+        long dispatched = System.nanoTime() - start;
+        CompletableFuture.allOf(renders.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        long completed = System.nanoTime() - start;
+
+        assertEquals(menus, shown.get());
+        for (MenuRegistry.Menu menu : open) assertEquals(1, menu.getPage());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(dispatched) < menus * readMillis / 10,
+                "Button handling waited on page reads");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(completed) < menus * readMillis / 2,
+                "Pages were not rendered concurrently");
+    }
+
+    /**
+     * Threads open, turn, and attach 100k menus, far past the cap, while the timer expires them.
+     * Every menu must be closed exactly once and the registry must never hold more than the cap.
+     */
+    @Test
+    void closesEveryMenuOnceUnderConcurrentOpenTurnAndExpiry() throws Exception {
+        int threads = 8;
+        int menusPerThread = 12500;
+        int cap = 200;
+        Map<MenuRegistry.Menu, AtomicInteger> closes = new ConcurrentHashMap<>();
+        MenuRegistry registry = new MenuRegistry(Duration.ofMillis(300), cap,
+                menu -> closes.computeIfAbsent(menu, m -> new AtomicInteger()).incrementAndGet());
+        InteractionHook hook = (InteractionHook) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { InteractionHook.class }, (proxy, method, args) -> null);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger maxSize = new AtomicInteger();
+        List<Future<List<MenuRegistry.Menu>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                List<MenuRegistry.Menu> opened = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < menusPerThread; i++) {
+                    MenuRegistry.Menu menu = registry.open(thread + ":" + i, new SlowPages(0));
+                    opened.add(menu);
+                    maxSize.accumulateAndGet(registry.size(), Math::max);
+
+                    // Turn and attach a recent menu, which may have been evicted by another thread already
+                    MenuRegistry.Menu recent = opened.get(random.nextInt(Math.max(0, opened.size() - 50), opened.size()));
+                    int page = recent.target(1);
+                    if (page >= 0) recent.render(page).thenAccept(embed -> recent.show(page));
+                    registry.attach(menu, hook);
+                    if (i % 2500 == 2499) Thread.sleep(random.nextInt(200, 1500));
+                }
+                return opened;
+            }));
+        }
+        start.countDown();
+        List<MenuRegistry.Menu> opened = new ArrayList<>();
+        for (Future<List<MenuRegistry.Menu>> result : results) opened.addAll(result.get(120, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        // Let the timer expire whatever is left
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.size() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(100);
+
+        int total = threads * menusPerThread;
+        assertEquals(0, registry.size());
+        assertEquals(total, registry.getEvicted() + registry.getExpired());
+        assertTrue(registry.getExpired() > 0);
+        assertTrue(maxSize.get() <= cap + threads, "Registry grew past its cap");
+        for (MenuRegistry.Menu menu : opened) {
+            assertNull(registry.get(menu.uuid));
+            AtomicInteger count = closes.get(menu);
+            assertNotNull(count, "Menu " + menu.uuid + " was never closed");
+            assertEquals(1, count.get(), "Menu " + menu.uuid + " was closed more than once");
+        }
+    }
+
+    private class SlowPages implements PageSource {
+
+        private final long readMillis;
+
+        private SlowPages(long readMillis) {
+            this.readMillis = readMillis;
+        }
+
+        @Override
+        public int getPageCount() {
+            return 5;
+        }
+
+        @Override
+        public MessageEmbed getPage(int page) {
+            if (readMillis > 0) {
+                try {
+                    Thread.sleep(readMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return embed(page);
+        }
+
+        @Override
+        public CompletableFuture<MessageEmbed> getPageAsync(int page) {
+            return CompletableFuture.supplyAsync(() -> getPage(page), database);
+        }
+    }
+
+    private static MessageEmbed embed(int page) {
+        return new EmbedBuilder().setDescription("Page " + (page + 1)).build();
+    }
+}